@@ -9,6 +9,11 @@ public class SubDocument extends LabeledDocument<State, State> {
 
 	protected int offset = 0;
 
+	/**
+	 * Not serialized, since it can be computed from the tokens at any time.
+	 */
+	private transient volatile TokenShape tokenShape;
+
 	public SubDocument(String parentDocumentName, String subDocumentName, String content, List<Token> tokens,
 			int offset) {
 		super(subDocumentName, content, tokens);
@@ -24,6 +29,21 @@ public class SubDocument extends LabeledDocument<State, State> {
 		return offset;
 	}
 
+	/**
+	 * Returns the orthographic properties of the tokens of this document. The
+	 * table is computed on the first call and kept afterwards.
+	 * 
+	 * @return
+	 */
+	public TokenShape getTokenShape() {
+		TokenShape shape = tokenShape;
+		if (shape == null) {
+			shape = new TokenShape(tokens);
+			tokenShape = shape;
+		}
+		return shape;
+	}
+
 	@Override
 	public String toString() {
 		return "SubDocument [parentDocumentName=" + parentDocumentName + ", name=" + name + ", offset=" + offset
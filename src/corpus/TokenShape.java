@@ -0,0 +1,216 @@
+package corpus;
+
+import java.io.Serializable;
+import java.util.List;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+/**
+ * Table of the orthographic properties of all tokens of a document. The
+ * properties of each token are stored as a bit mask, so that the properties of
+ * a token span are computed with a few bit operations instead of evaluating
+ * them on the token texts again. The short prefixes and suffixes of all tokens
+ * are precomputed as well.
+ *
+ * The table is computed once per document, when it is needed for the first
+ * time. Use {@link #of(Document)} to obtain the table of a document.
+ */
+public class TokenShape implements Serializable {
+
+	public static final int CONTAINS_DIGIT = 1;
+	public static final int CONTAINS_HYPHEN = 1 << 1;
+	public static final int CONTAINS_GREEK = 1 << 2;
+	public static final int CONTAINS_PUNCTUATION = 1 << 3;
+	public static final int STARTS_WITH_CAPITAL = 1 << 4;
+	public static final int ALL_CAPITAL = 1 << 5;
+
+	/**
+	 * Prefixes and suffixes up to this length are precomputed.
+	 */
+	public static final int MAX_CACHED_AFFIX_LENGTH = 3;
+
+	/**
+	 * The characters matched by the former punctuation pattern of the
+	 * Features class (ASCII punctuation without the backslash).
+	 */
+	private static final String PUNCTUATION_CHARACTERS = "!\"#$%&'()*+,-./:;<=>?@[]^_`{|}~";
+
+	/**
+	 * The tables of all documents that are not SubDocuments. The keys are
+	 * weak and compared by identity, so a table is discarded together with
+	 * its document.
+	 */
+	private static final LoadingCache<Document<?>, TokenShape> SHAPES = CacheBuilder.newBuilder().weakKeys()
+			.build(new CacheLoader<Document<?>, TokenShape>() {
+				@Override
+				public TokenShape load(Document<?> document) {
+					return new TokenShape(document.getTokens());
+				}
+			});
+
+	private String[] texts;
+	private int[] shapes;
+	private String[][] prefixes;
+	private String[][] suffixes;
+
+	public TokenShape(List<Token> tokens) {
+		this.texts = new String[tokens.size()];
+		this.shapes = new int[tokens.size()];
+		this.prefixes = new String[MAX_CACHED_AFFIX_LENGTH][tokens.size()];
+		this.suffixes = new String[MAX_CACHED_AFFIX_LENGTH][tokens.size()];
+		for (int i = 0; i < tokens.size(); i++) {
+			String text = tokens.get(i).getText();
+			texts[i] = text;
+			shapes[i] = computeShape(text);
+			for (int length = 1; length <= MAX_CACHED_AFFIX_LENGTH; length++) {
+				prefixes[length - 1][i] = prefix(text, length);
+				suffixes[length - 1][i] = suffix(text, length);
+			}
+		}
+	}
+
+	/**
+	 * Returns the token shape table of the given document. SubDocuments keep
+	 * their own table. The tables of all other documents are cached here.
+	 *
+	 * @param document
+	 * @return
+	 */
+	public static TokenShape of(Document<?> document) {
+		if (document instanceof SubDocument) {
+			return ((SubDocument) document).getTokenShape();
+		}
+		return SHAPES.getUnchecked(document);
+	}
+
+	/**
+	 * Computes the bit mask of all properties of the given token text.
+	 *
+	 * @param text
+	 * @return
+	 */
+	public static int computeShape(String text) {
+		int shape = 0;
+		boolean allCapital = !text.isEmpty();
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c >= '0' && c <= '9') {
+				shape |= CONTAINS_DIGIT;
+			}
+			if (c == '-') {
+				shape |= CONTAINS_HYPHEN;
+			}
+			if (Character.UnicodeBlock.of(c) == Character.UnicodeBlock.GREEK_EXTENDED) {
+				shape |= CONTAINS_GREEK;
+			}
+			if (PUNCTUATION_CHARACTERS.indexOf(c) >= 0) {
+				shape |= CONTAINS_PUNCTUATION;
+			}
+			if (c < 'A' || c > 'Z') {
+				allCapital = false;
+			}
+		}
+		if (!text.isEmpty() && text.charAt(0) >= 'A' && text.charAt(0) <= 'Z') {
+			shape |= STARTS_WITH_CAPITAL;
+		}
+		if (allCapital) {
+			shape |= ALL_CAPITAL;
+		}
+		return shape;
+	}
+
+	/**
+	 * Returns the bit mask of the token at the given index.
+	 *
+	 * @param tokenIndex
+	 * @return
+	 */
+	public int getShape(int tokenIndex) {
+		return shapes[tokenIndex];
+	}
+
+	/**
+	 * Returns the properties that all tokens in the span [begin, end) have.
+	 *
+	 * @param begin
+	 * @param end
+	 * @return
+	 */
+	public int all(int begin, int end) {
+		int shape = ~0;
+		for (int i = begin; i < end; i++) {
+			shape &= shapes[i];
+		}
+		return shape;
+	}
+
+	/**
+	 * Returns the properties that at least one token in the span [begin, end)
+	 * has.
+	 *
+	 * @param begin
+	 * @param end
+	 * @return
+	 */
+	public int any(int begin, int end) {
+		int shape = 0;
+		for (int i = begin; i < end; i++) {
+			shape |= shapes[i];
+		}
+		return shape;
+	}
+
+	/**
+	 * Returns the first length characters of the token at the given index (or
+	 * the whole text, if the token is shorter), like Features.prefix.
+	 *
+	 * @param tokenIndex
+	 * @param length
+	 * @return
+	 */
+	public String getPrefix(int tokenIndex, int length) {
+		if (length > 0 && length <= MAX_CACHED_AFFIX_LENGTH) {
+			return prefixes[length - 1][tokenIndex];
+		}
+		return length > 0 ? prefix(texts[tokenIndex], length) : "";
+	}
+
+	/**
+	 * Returns the last length characters of the token at the given index (or
+	 * the whole text, if the token is shorter), like Features.suffix.
+	 *
+	 * @param tokenIndex
+	 * @param length
+	 * @return
+	 */
+	public String getSuffix(int tokenIndex, int length) {
+		if (length > 0 && length <= MAX_CACHED_AFFIX_LENGTH) {
+			return suffixes[length - 1][tokenIndex];
+		}
+		return length > 0 ? suffix(texts[tokenIndex], length) : "";
+	}
+
+	/**
+	 * Returns the length of the text of the token at the given index.
+	 *
+	 * @param tokenIndex
+	 * @return
+	 */
+	public int getLength(int tokenIndex) {
+		return texts[tokenIndex].length();
+	}
+
+	public int size() {
+		return shapes.length;
+	}
+
+	private static String prefix(String text, int length) {
+		return text.substring(0, Math.min(text.length(), length));
+	}
+
+	private static String suffix(String text, int length) {
+		return text.substring(Math.max(0, text.length() - length));
+	}
+}
@@ -119,11 +119,11 @@ public class AnnotationUtils {
 	 * @return
 	 */
 	public static boolean matchArguments(EntityAnnotation e1, EntityAnnotation e2) {
-		Multimap<ArgumentRole, VariableID> arguments1 = e1.getReadOnlyArguments();
-		Multimap<ArgumentRole, VariableID> arguments2 = e2.getReadOnlyArguments();
 		// this is a fast-reject test
-		if (arguments1.size() != arguments2.size())
+		if (e1.getNumberOfArguments() != e2.getNumberOfArguments())
 			return false;
+		Multimap<ArgumentRole, VariableID> arguments1 = e1.getReadOnlyArguments();
+		Multimap<ArgumentRole, VariableID> arguments2 = e2.getReadOnlyArguments();
 		for (Entry<ArgumentRole, VariableID> argument1 : arguments1.entries()) {
 			if (!containsArgument(e2, arguments2, e1, argument1))
 				return false;
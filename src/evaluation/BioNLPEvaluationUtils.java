@@ -5,10 +5,8 @@ import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Collection;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.function.Function;
@@ -37,7 +35,7 @@ public class BioNLPEvaluationUtils {
 	}
 
 	public static boolean isEvent(EntityAnnotation e) {
-		return e.getReadOnlyArguments().size() > 0;
+		return e.getNumberOfArguments() > 0;
 	}
 
 	private static String convertToEntityID(EntityAnnotation entity) {
@@ -145,25 +143,46 @@ public class BioNLPEvaluationUtils {
 	 * @param wipeFolder
 	 */
 	public static Set<File> statesToBioNLPFiles(File outputDir, List<State> states, boolean wipeFolder) {
-		Map<String, File> files = new HashMap<>();
+		Set<File> files = new HashSet<>();
+		File newParent = createBioNLPFolder(outputDir);
+		for (State s : states) {
+			files.add(stateToBioNLPFile(newParent, s));
+		}
+		return files;
+	}
+
+	/**
+	 * Creates a new sub folder in the given directory that is named with the
+	 * current time stamp.
+	 * 
+	 * @param outputDir
+	 * @return
+	 */
+	public static File createBioNLPFolder(File outputDir) {
 		String newParentName = new SimpleDateFormat("yyyy-MM-dd hh-mm-ss").format(new Date());
 		File newParent = new File(outputDir, newParentName);
 		newParent.mkdir();
-		for (State s : states) {
-			SubDocument d = (SubDocument) s.getDocument();
-			File file = files.get(d.getParentDocumentName());
-			if (file == null) {
-				file = new File(newParent, d.getParentDocumentName() + ".a2");
-				files.put(d.getParentDocumentName(), file);
-			}
-			try {
-				String stateAsString = BioNLPEvaluationUtils.stateToBioNLPString(s);
-				FileUtils.writeFile(file, stateAsString, true);
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+		return newParent;
+	}
+
+	/**
+	 * Appends the annotations of the given state to the a2 file of its parent
+	 * document in the given folder.
+	 * 
+	 * @param folder
+	 * @param state
+	 * @return the a2 file of the parent document
+	 */
+	public static File stateToBioNLPFile(File folder, State state) {
+		SubDocument d = (SubDocument) state.getDocument();
+		File file = new File(folder, d.getParentDocumentName() + ".a2");
+		try {
+			String stateAsString = BioNLPEvaluationUtils.stateToBioNLPString(state);
+			FileUtils.writeFile(file, stateAsString, true);
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
-		return new HashSet<>(files.values());
+		return file;
 	}
 
 	public static F1Score evaluatePrediction(List<State> predictions, boolean ignoreRelations, boolean excludeTriggers,
@@ -171,81 +190,97 @@ public class BioNLPEvaluationUtils {
 		// log.debug("================================");
 		F1Score score = new F1Score();
 		for (State prediction : predictions) {
-			State goldState = ((LabeledDocument<State, State>) prediction.getDocument()).getGoldResult();
-			Predicate<EntityAnnotation> filter = e -> (!excludeTriggers || !isEvent(e))
-					&& (!excludePriors || !e.isPriorKnowledge());
+			addToScore(score, prediction, ignoreRelations, excludeTriggers, excludePriors);
+		}
+		score.score();
+		return score;
+	}
 
-			/*
-			 * Filter prior knowledge and trigger entities if requested.
-			 */
-			List<EntityAnnotation> predictedEntities = prediction.getEntities().stream().filter(filter)
-					.collect(Collectors.toList());
-			List<EntityAnnotation> correctEntities = goldState.getEntities().stream().filter(filter)
-					.collect(Collectors.toList());
+	/**
+	 * Adds the true positives, false positives and false negatives of a single
+	 * prediction to the given score. Call score.score() after all predictions
+	 * were added.
+	 * 
+	 * @param score
+	 * @param prediction
+	 * @param ignoreRelations
+	 * @param excludeTriggers
+	 * @param excludePriors
+	 */
+	public static void addToScore(F1Score score, State prediction, boolean ignoreRelations, boolean excludeTriggers,
+			boolean excludePriors) {
+		State goldState = ((LabeledDocument<State, State>) prediction.getDocument()).getGoldResult();
+		Predicate<EntityAnnotation> filter = e -> (!excludeTriggers || !isEvent(e))
+				&& (!excludePriors || !e.isPriorKnowledge());
 
-			int predictedMatches = 0;
-			int predictedMismatches = 0;
+		/*
+		 * Filter prior knowledge and trigger entities if requested.
+		 */
+		List<EntityAnnotation> predictedEntities = prediction.getEntities().stream().filter(filter)
+				.collect(Collectors.toList());
+		List<EntityAnnotation> correctEntities = goldState.getEntities().stream().filter(filter)
+				.collect(Collectors.toList());
 
-			for (EntityAnnotation pe : predictedEntities) {
-				boolean match = false;
-				for (EntityAnnotation ce : correctEntities) {
-					if (AnnotationUtils.matchEntities(pe, ce, ignoreRelations)) {
-						match = true;
-						break;
-					}
-				}
-				if (match) {
-					predictedMatches++;
-				} else {
-					predictedMismatches++;
-				}
-			}
-			int correctMatches = 0;
-			int correctMismatches = 0;
+		int predictedMatches = 0;
+		int predictedMismatches = 0;
 
+		for (EntityAnnotation pe : predictedEntities) {
+			boolean match = false;
 			for (EntityAnnotation ce : correctEntities) {
-				boolean match = false;
-				for (EntityAnnotation pe : predictedEntities) {
-					if (AnnotationUtils.matchEntities(pe, ce, ignoreRelations)) {
-						match = true;
-						break;
-					}
-				}
-				if (match) {
-					correctMatches++;
-				} else {
-					correctMismatches++;
+				if (AnnotationUtils.matchEntities(pe, ce, ignoreRelations)) {
+					match = true;
+					break;
 				}
 			}
+			if (match) {
+				predictedMatches++;
+			} else {
+				predictedMismatches++;
+			}
+		}
+		int correctMatches = 0;
+		int correctMismatches = 0;
 
-			if (predictedMatches != correctMatches) {
-				log.warn("GOLD: %s", goldState);
-				log.warn("PRED: %s", prediction);
-				log.warn("predicted Matches = %s; correct Matches = %s", predictedMatches, correctMatches);
-				log.warn("Golds:");
-				for (EntityAnnotation entity : correctEntities) {
-					log.warn("%s: %s %s-%s: \"%s\"", entity.getID(), entity.getType().getName(),
-							entity.getBeginTokenIndex(), entity.getEndTokenIndex(), entity.getText());
-				}
-				log.warn("Preds:");
-				for (EntityAnnotation entity : predictedEntities) {
-					log.warn("%s: %s %s-%s: \"%s\"", entity.getID(), entity.getType().getName(),
-							entity.getBeginTokenIndex(), entity.getEndTokenIndex(), entity.getText());
+		for (EntityAnnotation ce : correctEntities) {
+			boolean match = false;
+			for (EntityAnnotation pe : predictedEntities) {
+				if (AnnotationUtils.matchEntities(pe, ce, ignoreRelations)) {
+					match = true;
+					break;
 				}
 			}
+			if (match) {
+				correctMatches++;
+			} else {
+				correctMismatches++;
+			}
+		}
 
-			// log.debug("--------------------------");
-			// log.debug("G: %s", goldState);
-			// log.debug("P: %s", prediction);
-			// log.debug("TP: %s", predictedMatches);
-			// log.debug("FP: %s", predictedMismatches);
-			// log.debug("FN: %s", correctMismatches);
-			score.tp += predictedMatches;
-			score.fp += predictedMismatches;
-			score.fn += correctMismatches;
+		if (predictedMatches != correctMatches) {
+			log.warn("GOLD: %s", goldState);
+			log.warn("PRED: %s", prediction);
+			log.warn("predicted Matches = %s; correct Matches = %s", predictedMatches, correctMatches);
+			log.warn("Golds:");
+			for (EntityAnnotation entity : correctEntities) {
+				log.warn("%s: %s %s-%s: \"%s\"", entity.getID(), entity.getType().getName(),
+						entity.getBeginTokenIndex(), entity.getEndTokenIndex(), entity.getText());
+			}
+			log.warn("Preds:");
+			for (EntityAnnotation entity : predictedEntities) {
+				log.warn("%s: %s %s-%s: \"%s\"", entity.getID(), entity.getType().getName(),
+						entity.getBeginTokenIndex(), entity.getEndTokenIndex(), entity.getText());
+			}
 		}
-		score.score();
-		return score;
+
+		// log.debug("--------------------------");
+		// log.debug("G: %s", goldState);
+		// log.debug("P: %s", prediction);
+		// log.debug("TP: %s", predictedMatches);
+		// log.debug("FP: %s", predictedMismatches);
+		// log.debug("FN: %s", correctMismatches);
+		score.tp += predictedMatches;
+		score.fp += predictedMismatches;
+		score.fn += correctMismatches;
 	}
 
 	public static F1Score evaluatePrediction2(List<State> predictions, boolean ignoreRelations, boolean excludeTriggers,
@@ -7,9 +7,11 @@ import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -26,30 +28,54 @@ import learning.ObjectiveFunction;
 import learning.Scorer;
 import learning.Trainer;
 import objective.DefaultObjectiveFunction;
+import sampler.BeamSampler;
+import sampler.DeduplicatingExplorer;
 import sampler.DefaultInitializer;
+import sampler.EarlyStoppingSampler;
 import sampler.ExhaustiveBoundaryExplorer;
 import sampler.ExhaustiveEntityExplorer;
+import sampler.ParallelJoinExplorer;
+import sampler.StoppingCriteria;
+import sampler.StreamingExplorer;
+import sampler.StreamingExplorers;
 import sampling.DefaultSampler;
 import sampling.Explorer;
 import sampling.Initializer;
-import sampling.JoinExplorer;
+import sampling.Sampler;
+import templates.AbstractSpanFeatureTemplate;
 import templates.AbstractTemplate;
+import templates.MetaTemplate;
 import templates.MorphologicalTemplate;
 import templates.TFIDFTemplate;
 import variables.State;
 
 public class BioNLPLearning {
 	private static Logger log = LogManager.getFormatterLogger();
+	/**
+	 * System property with the number of documents per mini-batch. With more
+	 * than one document per batch, the ParallelTrainer is used for training.
+	 */
+	private static final String TRAINING_BATCH_SIZE_PROPERTY = "training.batchSize";
 
 	public static void main(String[] args) {
 		// int trainSize = 190;
 
 		int trainSize = 30;
 		int testSize = 30;
-		if (args != null && args.length == 2) {
+		/*
+		 * Inference on the test documents uses the greedy sampler of the
+		 * training, unless a beam width is given as third argument.
+		 */
+		boolean beamSearch = false;
+		int beamWidth = 5;
+		if (args != null && args.length >= 2) {
 			trainSize = Integer.parseInt(args[0]);
 			testSize = Integer.parseInt(args[1]);
 		}
+		if (args != null && args.length >= 3) {
+			beamSearch = true;
+			beamWidth = Integer.parseInt(args[2]);
+		}
 		BioNLPCorpus trainCorpus = BioNLPLoader.loadBioNLP2013Train(false);
 		BioNLPCorpus devCorpus = BioNLPLoader.loadBioNLP2013Dev(false);
 
@@ -72,6 +98,8 @@ public class BioNLPLearning {
 
 		int numberOfSamplingSteps = 20;
 		int numberOfEpochs = 10;
+		// Documents per mini-batch for parallel training
+		int trainingBatchSize = Integer.getInteger(TRAINING_BATCH_SIZE_PROPERTY, 1);
 		// N-Fold cross validation
 		int n = 1;
 		// long[] seeds = { 1234, 2345, 3456 };
@@ -142,7 +170,7 @@ public class BioNLPLearning {
 		templates.add(new MorphologicalTemplate());
 		// templates.add(new ContextTemplate());
 		// templates.add(new EntityTemplate());
-		// templates.add(new MetaTemplate());
+		templates.add(new MetaTemplate());
 		// templates.add(new RelationTemplate());
 		Model<State> model = new Model<>(templates);
 
@@ -155,8 +183,12 @@ public class BioNLPLearning {
 		explorers.add(new ExhaustiveBoundaryExplorer(true, true));
 		// explorers.add(new
 		// ExhaustiveRelationExplorer(trainCorpus.getCorpusConfig()));
-		DefaultSampler<State, State> sampler = new DefaultSampler<>(model, scorer, objective,
-				Arrays.asList(new JoinExplorer<>(explorers)), numberOfSamplingSteps);
+		ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		DeduplicatingExplorer explorer = new DeduplicatingExplorer(new ParallelJoinExplorer(explorers, pool));
+		DefaultSampler<State, State> stepSampler = new DefaultSampler<>(model, scorer, objective,
+				Arrays.asList(explorer), 1);
+		EarlyStoppingSampler sampler = new EarlyStoppingSampler(stepSampler, numberOfSamplingSteps,
+				StoppingCriteria.anyOf(StoppingCriteria.unchanged(2), StoppingCriteria.scoreGainBelow(3, 1e-4)));
 
 		Trainer trainer = new Trainer();
 		DefaultLearner<State> learner = new DefaultLearner<>(model, 1);
@@ -167,7 +199,23 @@ public class BioNLPLearning {
 		log.info("####################");
 		log.info("Start training");
 
-		trainer.train(sampler, initializer, learner, train, numberOfEpochs);
+		if (trainingBatchSize > 1) {
+			log.info("Parallel training with %s documents per batch", trainingBatchSize);
+			ParallelTrainer parallelTrainer = new ParallelTrainer(pool, trainingBatchSize);
+			parallelTrainer.addInstanceCallback(learner);
+			parallelTrainer.train(sampler, initializer, learner, train, numberOfEpochs);
+		} else {
+			trainer.train(sampler, initializer, learner, train, numberOfEpochs);
+		}
+		log.info("Removed %s duplicate states during training", explorer.getTotalNumberOfDuplicates());
+		log.info("Sampling during training: %s", sampler.getChainStatistics());
+		log.debug("Sampling steps per document: %s", sampler.getChainStatistics().getStepsPerDocument());
+		for (AbstractTemplate<State> template : templates) {
+			if (template instanceof AbstractSpanFeatureTemplate) {
+				log.info("%s feature cache: %s", template.getClass().getSimpleName(),
+						((AbstractSpanFeatureTemplate) template).getFeatureCache());
+			}
+		}
 		try {
 			model.saveModelToFile(new File(modelDir, EvaluationUtil.generateFilenameForModel(train.size())).getPath());
 		} catch (FileNotFoundException e) {
@@ -176,13 +224,44 @@ public class BioNLPLearning {
 			e.printStackTrace();
 		}
 		// sampler.setStepLimit(15);
-		// TODO use test here
-		List<State> predictions = trainer.test(sampler, initializer, test);
+		Sampler<State, State> testSampler = sampler;
+		BeamSampler beamSampler = null;
+		if (beamSearch) {
+			List<StreamingExplorer> beamExplorers = new ArrayList<>();
+			for (Explorer<State> e : explorers) {
+				beamExplorers.add(StreamingExplorers.asStreamingExplorer(e));
+			}
+			beamSampler = new BeamSampler(scorer, objective, beamExplorers, beamWidth, numberOfSamplingSteps, pool);
+			testSampler = beamSampler;
+		}
+		sampler.getChainStatistics().clear();
+		/*
+		 * Write and score the predictions while the remaining documents are
+		 * still being predicted.
+		 */
+		File predictionDir = BioNLPEvaluationUtils.createBioNLPFolder(outputDir);
+		Set<File> files = new HashSet<>();
+		F1Score entityOnlyScore = new F1Score();
+		F1Score entityAndTriggerOnlyScore = new F1Score();
+		F1Score relationScore = new F1Score();
+		F1Score overallScore = new F1Score();
+		ParallelTester tester = new ParallelTester(pool);
+		List<State> predictions = tester.test(testSampler, initializer, test, prediction -> {
+			files.add(BioNLPEvaluationUtils.stateToBioNLPFile(predictionDir, prediction));
+			BioNLPEvaluationUtils.addToScore(entityOnlyScore, prediction, true, true, false);
+			BioNLPEvaluationUtils.addToScore(entityAndTriggerOnlyScore, prediction, true, false, false);
+			BioNLPEvaluationUtils.addToScore(relationScore, prediction, false, false, true);
+			BioNLPEvaluationUtils.addToScore(overallScore, prediction, false, false, false);
+		});
+		if (beamSearch) {
+			log.info("Beam search (width %s): %s", beamWidth, beamSampler.getChainStatistics());
+		} else {
+			log.info("Sampling during testing: %s", sampler.getChainStatistics());
+		}
 		log.info("###############");
 		log.info("Trained Model Weights:");
 		EvaluationUtil.printWeights(model, -1);
 		log.info("###############");
-		Set<File> files = BioNLPEvaluationUtils.statesToBioNLPFiles(outputDir, predictions, true);
 		log.info("Produced annotaion files: %s", files);
 
 		log.info("Updates: %s, Alpha: %s", learner.updates, learner.currentAlpha);
@@ -204,15 +283,16 @@ public class BioNLPLearning {
 		log.info("Overall performance:");
 		EvaluationUtil.printPredictionPerformance(predictions);
 
-		F1Score entityOnlyScore = BioNLPEvaluationUtils.evaluatePrediction(predictions, true, true, false);
-		F1Score entityAndTriggerOnlyScore = BioNLPEvaluationUtils.evaluatePrediction(predictions, true, false, false);
-		F1Score relationScore = BioNLPEvaluationUtils.evaluatePrediction(predictions, false, false, true);
-		F1Score overallScore = BioNLPEvaluationUtils.evaluatePrediction(predictions, false, false, false);
+		entityOnlyScore.score();
+		entityAndTriggerOnlyScore.score();
+		relationScore.score();
+		overallScore.score();
 		log.info("Score entities:           %s", entityOnlyScore);
 		log.info("Score entities & trigger: %s", entityAndTriggerOnlyScore);
 		log.info("Score no prior:           %s", relationScore);
 		log.info("Score all:                %s", overallScore);
 
+		pool.shutdown();
 		TaggedTimer.printTimings();
 
 	}
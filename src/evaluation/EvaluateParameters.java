@@ -5,7 +5,8 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -18,8 +19,6 @@ import corpus.DatasetConfig;
 import corpus.DefaultCorpus;
 import corpus.LabeledDocument;
 import corpus.parser.usage.UsageLoader;
-import learning.DefaultLearner;
-import learning.Learner;
 import learning.Model;
 import learning.ObjectiveFunction;
 import learning.Scorer;
@@ -46,8 +45,19 @@ public class EvaluateParameters {
 	public static final int USAGE = 0;
 	public static final int BIONLP = 1;
 	private static final String RECORD_NAME_PATTERN = "%s_%s_NCrossVal-%s_(steps-%s_epochs-%s_initAlpha-%s_finalAlpha-%s_initOmega-%s_finalOmega_%s)";
+	/**
+	 * System properties that override the default degree of parallelism.
+	 */
+	private static final String PARALLEL_JOBS_PROPERTY = "evaluation.parallelJobs";
+	private static final String MEMORY_PER_JOB_PROPERTY = "evaluation.memoryPerJobMB";
+	private static final long DEFAULT_MEMORY_PER_JOB_MB = 2048;
 	private static final String MODEL_NAME_PATTERN = "%s_NCrossVal-%s_(steps-%s_epochs-%s_initAlpha-%s_finalAlpha-%s_initOmega-%s_finalOmega_%s)";
 
+	/**
+	 * The parameters of a training run. The learning rate alpha and the L2
+	 * regularization strength omega change linearly from their initial to
+	 * their final value over the epochs (see ScheduledLearner).
+	 */
 	static class Params {
 		int numberOfSamplingSteps;
 		int numberOfEpochs;
@@ -76,6 +86,99 @@ public class EvaluateParameters {
 
 	}
 
+	/**
+	 * The degree of parallelism for the (config, fold) jobs of a search.
+	 */
+	static class Parallelism {
+		/**
+		 * The maximum number of jobs that run in parallel.
+		 */
+		int maxJobs;
+		/**
+		 * The estimated heap space that a single job needs, in MB.
+		 */
+		long memoryPerJobMB;
+
+		public Parallelism(int maxJobs, long memoryPerJobMB) {
+			this.maxJobs = maxJobs;
+			this.memoryPerJobMB = memoryPerJobMB;
+		}
+
+		/**
+		 * Reads the parallelism from the system properties
+		 * evaluation.parallelJobs (default: number of processors) and
+		 * evaluation.memoryPerJobMB (default: 2048).
+		 * 
+		 * @return
+		 */
+		public static Parallelism fromSystemProperties() {
+			return new Parallelism(
+					Integer.getInteger(PARALLEL_JOBS_PROPERTY, Runtime.getRuntime().availableProcessors()),
+					Long.getLong(MEMORY_PER_JOB_PROPERTY, DEFAULT_MEMORY_PER_JOB_MB));
+		}
+
+		/**
+		 * The number of jobs that run at the same time. It is limited by the
+		 * configured maximum and, as an upper bound, by the memory that each
+		 * job needs.
+		 * 
+		 * @param numberOfJobs
+		 * @return
+		 */
+		public int getNumberOfParallelJobs(int numberOfJobs) {
+			long maxMemoryMB = Runtime.getRuntime().maxMemory() / (1024 * 1024);
+			int memoryLimit = (int) Math.max(1, maxMemoryMB / Math.max(1, memoryPerJobMB));
+			return Math.max(1, Math.min(Math.min(maxJobs, memoryLimit), numberOfJobs));
+		}
+
+		@Override
+		public String toString() {
+			return "Parallelism [maxJobs=" + maxJobs + ", memoryPerJobMB=" + memoryPerJobMB + "]";
+		}
+	}
+
+	/**
+	 * The model, sampler and learner for a single training run with the given
+	 * params.
+	 */
+	static class Run<LabeledDocumentT extends LabeledDocument<State, State>> {
+		Params params;
+		Model<State> model;
+		DefaultSampler<State, State> sampler;
+		Initializer<LabeledDocumentT, State> initializer;
+		Trainer trainer;
+		ScheduledLearner learner;
+		int trainedEpochs = 0;
+		F1Score score;
+
+		public Run(Params params, AnnotationConfig corpusConfig) {
+			this.params = params;
+			List<AbstractTemplate<State>> templates = new ArrayList<>();
+			templates.add(new RelationTemplate());
+			templates.add(new MorphologicalTemplate());
+			templates.add(new ContextTemplate());
+			model = new Model<>(templates);
+
+			Scorer<State> scorer = new Scorer<>(model);
+
+			ObjectiveFunction<State, State> objective = new DefaultObjectiveFunction();
+
+			initializer = new DefaultInitializer<>();
+			List<Explorer<State>> explorers = new ArrayList<>();
+			explorers.add(new ExhaustiveEntityExplorer(corpusConfig));
+			explorers.add(new ExhaustiveBoundaryExplorer());
+			explorers.add(new RelationExplorer(20, corpusConfig));
+			sampler = new DefaultSampler<>(model, scorer, objective, explorers, params.numberOfSamplingSteps);
+
+			learner = new ScheduledLearner(model, params.numberOfEpochs, params.initialAlpha, params.finalAlpha,
+					params.initialOmega, params.finalOmega);
+
+			trainer = new Trainer();
+			trainer.addInstanceCallback(learner);
+			trainer.addEpochCallback(learner);
+		}
+	}
+
 	public static void main(String[] args) {
 		// evaluate();
 		// visualizeAlphaOmegaGridSearch();
@@ -127,11 +230,15 @@ public class EvaluateParameters {
 		}
 		// allDocuments = allDocuments.subList(137, 140);
 
-		alphaOmegaGridSearch(modelDir, evalDir, allDocuments, config);
+		Parallelism parallelism = Parallelism.fromSystemProperties();
+		log.info("%s", parallelism);
+		alphaOmegaGridSearch(modelDir, evalDir, allDocuments, config, parallelism);
+		// alphaOmegaSuccessiveHalving(allDocuments, config, parallelism);
 	}
 
 	private static <LabeledDocumentT extends LabeledDocument<State, State>> void alphaOmegaGridSearch(File modelDir,
-			File evalDir, List<LabeledDocumentT> allDocuments, AnnotationConfig corpusConfig) {
+			File evalDir, List<LabeledDocumentT> allDocuments, AnnotationConfig corpusConfig,
+			Parallelism parallelism) {
 		int defaultStep = 10;
 		int defaultEpoch = 5;
 
@@ -150,8 +257,8 @@ public class EvaluateParameters {
 		// N-Fold cross validation
 		int n = 5;
 		long time = System.currentTimeMillis();
-		evaluateParamConfigs(alpha, n, allDocuments, corpusConfig, "alpha", modelDir, evalDir);
-		evaluateParamConfigs(omega, n, allDocuments, corpusConfig, "omega", modelDir, evalDir);
+		evaluateParamConfigs(alpha, n, allDocuments, corpusConfig, "alpha", modelDir, evalDir, parallelism);
+		evaluateParamConfigs(omega, n, allDocuments, corpusConfig, "omega", modelDir, evalDir, parallelism);
 		// log.debug("Overall performance:");
 		// EvaluationUtil.printPerformance(testRecords);
 		log.debug("############################");
@@ -163,9 +270,29 @@ public class EvaluateParameters {
 		TaggedTimer.printTimings();
 	}
 
+	private static <LabeledDocumentT extends LabeledDocument<State, State>> void alphaOmegaSuccessiveHalving(
+			List<LabeledDocumentT> allDocuments, AnnotationConfig corpusConfig, Parallelism parallelism) {
+		int defaultStep = 10;
+		int defaultEpoch = 5;
+
+		List<Params> params = new ArrayList<>();
+		params.add(new Params(defaultStep, defaultEpoch, 0.1, 0.01, 0, 0));
+		params.add(new Params(defaultStep, defaultEpoch, 0.1, 0.1, 0, 0));
+		params.add(new Params(defaultStep, defaultEpoch, 0.01, 0.01, 0, 0));
+		params.add(new Params(defaultStep, defaultEpoch, 0.1, 0.01, 1, 1));
+		params.add(new Params(defaultStep, defaultEpoch, 0.1, 0.01, 1, 0));
+		params.add(new Params(defaultStep, defaultEpoch, 0.1, 0.01, 1, 0.5));
+		params.add(new Params(defaultStep, defaultEpoch, 0.1, 0.01, 0.5, 0));
+
+		long time = System.currentTimeMillis();
+		// compare to the 5-fold cross validation of alphaOmegaGridSearch
+		successiveHalving(params, allDocuments, corpusConfig, "alpha-omega", 1, 0.5, 5, parallelism);
+		log.debug("Total time: %s", String.valueOf((System.currentTimeMillis() - time)));
+	}
+
 	private static <LabeledDocumentT extends LabeledDocument<State, State>> void basicParamsGridSearch(File modelDir,
 			File evalDir, List<Sampler<State, State>> samplers, List<LabeledDocumentT> allDocuments,
-			AnnotationConfig corpusConfig) {
+			AnnotationConfig corpusConfig, Parallelism parallelism) {
 		int defaultStep = 10;
 		int defaultEpoch = 5;
 		List<Params> step = new ArrayList<>();
@@ -191,10 +318,10 @@ public class EvaluateParameters {
 		// N-Fold cross validation
 		int n = 5;
 		long time = System.currentTimeMillis();
-		evaluateParamConfigs(step, n, allDocuments, corpusConfig, "step", modelDir, evalDir);
-		evaluateParamConfigs(alpha, n, allDocuments, corpusConfig, "alpha", modelDir, evalDir);
-		evaluateParamConfigs(epoch, n, allDocuments, corpusConfig, "epoch", modelDir, evalDir);
-		evaluateParamConfigs(omega, n, allDocuments, corpusConfig, "omega", modelDir, evalDir);
+		evaluateParamConfigs(step, n, allDocuments, corpusConfig, "step", modelDir, evalDir, parallelism);
+		evaluateParamConfigs(alpha, n, allDocuments, corpusConfig, "alpha", modelDir, evalDir, parallelism);
+		evaluateParamConfigs(epoch, n, allDocuments, corpusConfig, "epoch", modelDir, evalDir, parallelism);
+		evaluateParamConfigs(omega, n, allDocuments, corpusConfig, "omega", modelDir, evalDir, parallelism);
 		// log.debug("Overall performance:");
 		// EvaluationUtil.printPerformance(testRecords);
 		log.debug("############################");
@@ -205,89 +332,214 @@ public class EvaluateParameters {
 
 	private static <LabeledDocumentT extends LabeledDocument<State, State>> void evaluateParamConfigs(
 			List<Params> paramsList, int nCrossValidation, List<LabeledDocumentT> documents,
-			AnnotationConfig corpusConfig, String descriptor, File modelDir, File evalDir) {
+			AnnotationConfig corpusConfig, String descriptor, File modelDir, File evalDir, Parallelism parallelism) {
 		log.debug("############################");
 		log.debug("############################");
 		log.debug("Evalutate param group: %s", descriptor);
-		Random rand = new Random(0);
-		long[] seeds = new long[nCrossValidation];
+		int numberOfJobs = paramsList.size() * nCrossValidation;
+		int parallelJobs = parallelism.getNumberOfParallelJobs(numberOfJobs);
+		log.info("Run %s jobs (%s configs x %s folds) with %s jobs in parallel", numberOfJobs, paramsList.size(),
+				nCrossValidation, parallelJobs);
+		/*
+		 * The jobs share no mutable state: each job creates its own split,
+		 * model, sampler and trainer.
+		 */
+		ForkJoinPool pool = new ForkJoinPool(parallelJobs);
+		List<List<ForkJoinTask<F1Score>>> jobs = new ArrayList<>();
+		for (Params params : paramsList) {
+			List<ForkJoinTask<F1Score>> folds = new ArrayList<>();
+			for (int i = 0; i < nCrossValidation; i++) {
+				int fold = i;
+				folds.add(pool.submit(() -> evaluateFold(params, fold, nCrossValidation, documents, corpusConfig,
+						descriptor, modelDir, evalDir)));
+			}
+			jobs.add(folds);
+		}
+		List<List<F1Score>> results = new ArrayList<>();
+		for (List<ForkJoinTask<F1Score>> folds : jobs) {
+			List<F1Score> foldResults = new ArrayList<>();
+			for (ForkJoinTask<F1Score> fold : folds) {
+				foldResults.add(fold.join());
+			}
+			results.add(foldResults);
+		}
+		pool.shutdown();
+		log.info("Results for param group %s:\n%s", descriptor, formatResults(paramsList, results));
+	}
 
-		for (int i = 0; i < nCrossValidation; i++) {
-			seeds[i] = rand.nextLong();
+	private static <LabeledDocumentT extends LabeledDocument<State, State>> F1Score evaluateFold(Params params,
+			int i, int nCrossValidation, List<LabeledDocumentT> documents, AnnotationConfig corpusConfig,
+			String descriptor, File modelDir, File evalDir) {
+		log.debug("############################");
+		log.debug("Evalutate param: %s", params);
+		log.debug("Cross Validation: %s/%s", i + 1, nCrossValidation);
+		// copy the documents, since jobs run concurrently and the split may shuffle them
+		DataSplit<LabeledDocumentT> split = new DataSplit<>(new ArrayList<>(documents), 0.8);
+		List<LabeledDocumentT> train = split.getTrain();
+		List<LabeledDocumentT> test = split.getTest();
+
+		Run<LabeledDocumentT> run = new Run<>(params, corpusConfig);
+		Model<State> model = run.model;
+		DefaultSampler<State, State> sampler = run.sampler;
+		Initializer<LabeledDocumentT, State> initializer = run.initializer;
+		Trainer trainer = run.trainer;
+		ScheduledLearner learner = run.learner;
+
+		log.debug("Train/test split: %s => #train: %s, #test: %s", split.getSplit(), train.size(), test.size());
+
+		log.debug("####################");
+		log.debug("Start learning");
+		trainer.train(sampler, initializer, learner, train, params.numberOfEpochs);
+		try {
+			model.saveModelToFile(new File(modelDir,
+					EvaluationUtil.generateFilenameForModel(String.format(MODEL_NAME_PATTERN, descriptor, i,
+							params.numberOfSamplingSteps, params.numberOfEpochs, params.initialAlpha,
+							params.finalAlpha, params.initialOmega, params.finalOmega))).getPath());
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
+		// try {
+		// EvaluationUtil.storeRecord(learner.getTrainRecord(), evalDir,
+		// String.format(RECORD_NAME_PATTERN, descriptor, "train", i,
+		// params.numberOfSamplingSteps,
+		// params.numberOfEpochs, params.initialAlpha,
+		// params.finalAlpha, params.initialOmega,
+		// params.finalOmega));
+		// } catch (IOException e1) {
+		// e1.printStackTrace();
+		// }
+		List<State> predictions = trainer.test(sampler, initializer, test);
+		// try {
+		// EvaluationUtil.storeRecord(learner.getTestRecord(), evalDir,
+		// String.format(RECORD_NAME_PATTERN, descriptor, "test", i,
+		// params.numberOfSamplingSteps,
+		// params.numberOfEpochs, params.initialAlpha,
+		// params.finalAlpha, params.initialOmega,
+		// params.finalOmega));
+		// } catch (FileNotFoundException e) {
+		// e.printStackTrace();
+		// } catch (IOException e) {
+		// e.printStackTrace();
+		// }
+		F1Score score = BioNLPEvaluationUtils.evaluatePrediction(predictions, false, false, false);
+		log.info("%s, fold %s/%s: %s", params, i + 1, nCrossValidation, score);
+		return score;
+	}
+
+	/**
+	 * Successive halving over the given params. All params are trained for
+	 * initialEpochs epochs and evaluated on the test split. Only the best
+	 * fraction of them is trained further, with twice as many epochs in each
+	 * round, until a single params is left or the remaining params reached
+	 * their numberOfEpochs. All runs use the same train/test split.
+	 * 
+	 * The savings are logged relative to a grid search over the same params
+	 * with gridFolds cross validation folds, which trains each params for
+	 * numberOfEpochs epochs and runs one test pass per fold. Both are counted
+	 * in sampled chains, i.e. the training epochs times the number of train
+	 * documents plus the test passes times the number of test documents.
+	 * 
+	 * @param paramsList
+	 * @param documents
+	 * @param corpusConfig
+	 * @param descriptor
+	 * @param initialEpochs
+	 * @param keepFraction
+	 *            the fraction of the runs that survives each round
+	 * @param gridFolds
+	 *            the number of folds of the grid search that the savings are
+	 *            compared to
+	 * @param parallelism
+	 * @return the params with the best score in the last round
+	 */
+	private static <LabeledDocumentT extends LabeledDocument<State, State>> Params successiveHalving(
+			List<Params> paramsList, List<LabeledDocumentT> documents, AnnotationConfig corpusConfig,
+			String descriptor, int initialEpochs, double keepFraction, int gridFolds, Parallelism parallelism) {
+		log.debug("############################");
+		log.debug("Successive halving for param group: %s", descriptor);
+		DataSplit<LabeledDocumentT> split = new DataSplit<>(new ArrayList<>(documents), 0.8);
+		List<LabeledDocumentT> train = split.getTrain();
+		List<LabeledDocumentT> test = split.getTest();
+
+		List<Run<LabeledDocumentT>> runs = new ArrayList<>();
+		long fullGridEpochs = 0;
 		for (Params params : paramsList) {
-			log.debug("############################");
-			log.debug("Evalutate param: %s", params);
-			for (int i = 0; i < nCrossValidation; i++) {
-				log.debug("############################");
-				log.debug("############################");
-				log.debug("Cross Validation: %s/%s", i + 1, nCrossValidation);
-				DataSplit<LabeledDocumentT> split = new DataSplit<>(documents, 0.8);
-				List<LabeledDocumentT> train = split.getTrain();
-				List<LabeledDocumentT> test = split.getTest();
-
-				List<AbstractTemplate<State>> templates = new ArrayList<>();
-				templates.add(new RelationTemplate());
-				templates.add(new MorphologicalTemplate());
-				templates.add(new ContextTemplate());
-				Model<State> model = new Model<>(templates);
-
-				Scorer<State> scorer = new Scorer<>(model);
-
-				ObjectiveFunction<State, State> objective = new DefaultObjectiveFunction();
-
-				Initializer<LabeledDocumentT, State> initializer = new DefaultInitializer<>();
-				List<Explorer<State>> explorers = new ArrayList<>();
-				explorers.add(new ExhaustiveEntityExplorer(corpusConfig));
-				explorers.add(new ExhaustiveBoundaryExplorer());
-				explorers.add(new RelationExplorer(20, corpusConfig));
-				DefaultSampler<State, State> sampler = new DefaultSampler<>(model, scorer, objective, explorers,
-						params.numberOfSamplingSteps);
-
-				Trainer trainer = new Trainer();
-
-				Learner<State> learner = new DefaultLearner<>(model, 0.1);
-
-				log.debug("Train/test split: %s => #train: %s, #test: %s", split.getSplit(), train.size(), test.size());
-
-				log.debug("####################");
-				log.debug("Start learning");
-				trainer.train(sampler, initializer, learner, train, params.numberOfEpochs);
-				try {
-					model.saveModelToFile(new File(modelDir,
-							EvaluationUtil.generateFilenameForModel(String.format(MODEL_NAME_PATTERN, descriptor, i,
-									params.numberOfSamplingSteps, params.numberOfEpochs, params.initialAlpha,
-									params.finalAlpha, params.initialOmega, params.finalOmega))).getPath());
-				} catch (FileNotFoundException e) {
-					e.printStackTrace();
-				} catch (IOException e) {
-					e.printStackTrace();
+			runs.add(new Run<>(params, corpusConfig));
+			fullGridEpochs += (long) gridFolds * params.numberOfEpochs;
+		}
+		long fullGridTestPasses = (long) gridFolds * paramsList.size();
+		long trainedEpochs = 0;
+		long testPasses = 0;
+		int budget = initialEpochs;
+		ForkJoinPool pool = new ForkJoinPool(parallelism.getNumberOfParallelJobs(runs.size()));
+		for (int round = 1;; round++) {
+			List<ForkJoinTask<?>> tasks = new ArrayList<>();
+			for (Run<LabeledDocumentT> run : runs) {
+				int epochs = Math.min(budget, run.params.numberOfEpochs) - run.trainedEpochs;
+				if (epochs == 0 && run.score != null) {
+					// the run already finished its epochs, reuse its score
+					continue;
 				}
-				// try {
-				// EvaluationUtil.storeRecord(learner.getTrainRecord(), evalDir,
-				// String.format(RECORD_NAME_PATTERN, descriptor, "train", i,
-				// params.numberOfSamplingSteps,
-				// params.numberOfEpochs, params.initialAlpha,
-				// params.finalAlpha, params.initialOmega,
-				// params.finalOmega));
-				// } catch (IOException e1) {
-				// e1.printStackTrace();
-				// }
-				List<State> predictions = trainer.test(sampler, initializer, test);
-				// try {
-				// EvaluationUtil.storeRecord(learner.getTestRecord(), evalDir,
-				// String.format(RECORD_NAME_PATTERN, descriptor, "test", i,
-				// params.numberOfSamplingSteps,
-				// params.numberOfEpochs, params.initialAlpha,
-				// params.finalAlpha, params.initialOmega,
-				// params.finalOmega));
-				// } catch (FileNotFoundException e) {
-				// e.printStackTrace();
-				// } catch (IOException e) {
-				// e.printStackTrace();
-				// }
+				trainedEpochs += epochs;
+				testPasses++;
+				tasks.add(pool.submit(() -> {
+					if (epochs > 0) {
+						run.trainer.train(run.sampler, run.initializer, run.learner, train, epochs);
+						run.trainedEpochs += epochs;
+					}
+					List<State> predictions = run.trainer.test(run.sampler, run.initializer, test);
+					run.score = BioNLPEvaluationUtils.evaluatePrediction(predictions, false, false, false);
+				}));
+			}
+			for (ForkJoinTask<?> task : tasks) {
+				task.join();
+			}
+			runs.sort((r1, r2) -> Double.compare(r2.score.f1, r1.score.f1));
+			for (Run<LabeledDocumentT> run : runs) {
+				log.info("Round %s: %s after %s epochs: %s", round, run.params, run.trainedEpochs, run.score);
+			}
+			boolean allFinished = runs.stream().allMatch(run -> run.trainedEpochs >= run.params.numberOfEpochs);
+			if (runs.size() == 1 || allFinished) {
+				break;
+			}
+			int survivors = Math.max(1, (int) Math.ceil(runs.size() * keepFraction));
+			runs = new ArrayList<>(runs.subList(0, survivors));
+			budget *= 2;
+		}
+		pool.shutdown();
+		Params best = runs.get(0).params;
+		log.info("Best params of group %s: %s (%s)", descriptor, best, runs.get(0).score);
+		long sampledChains = trainedEpochs * train.size() + testPasses * test.size();
+		long fullGridSampledChains = fullGridEpochs * train.size() + fullGridTestPasses * test.size();
+		log.info("Trained %s epochs and ran %s test passes instead of %s epochs and %s test passes for the full grid "
+				+ "with %s folds (%.1f%% of the sampled chains saved)", trainedEpochs, testPasses, fullGridEpochs,
+				fullGridTestPasses, gridFolds, 100.0 * (fullGridSampledChains - sampledChains) / fullGridSampledChains);
+		return best;
+	}
+
+	/**
+	 * Creates a table with the F1 score of each fold and the mean F1 score for
+	 * each of the params.
+	 * 
+	 * @param paramsList
+	 * @param results
+	 * @return
+	 */
+	private static String formatResults(List<Params> paramsList, List<List<F1Score>> results) {
+		StringBuilder table = new StringBuilder();
+		for (int p = 0; p < paramsList.size(); p++) {
+			List<F1Score> foldResults = results.get(p);
+			double sum = 0;
+			table.append(paramsList.get(p));
+			for (F1Score score : foldResults) {
+				table.append(String.format("\t%.4f", score.f1));
+				sum += score.f1;
 			}
+			table.append(String.format("\tmean=%.4f\n", sum / foldResults.size()));
 		}
+		return table.toString();
 	}
 	/*
 	 * 
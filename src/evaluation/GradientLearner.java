@@ -0,0 +1,90 @@
+package evaluation;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import factors.AbstractFactor;
+import learning.Learner;
+import learning.Vector;
+import templates.AbstractTemplate;
+import variables.State;
+
+/**
+ * Accumulates the weight deltas of the updates that a chain requests, without
+ * changing the model. The deltas follow the perceptron rule of the
+ * DefaultLearner: if the model ranks the two states differently than the
+ * objective, the difference of their features is added to (or subtracted
+ * from) the delta.
+ */
+class GradientLearner implements Learner<State> {
+	private Map<AbstractTemplate<?>, Vector> delta = new HashMap<>();
+	private int numberOfUpdates = 0;
+
+	@Override
+	public void update(State currentState, State nextState) {
+		double direction;
+		if (nextState.getObjectiveScore() > currentState.getObjectiveScore()) {
+			direction = nextState.getModelScore() <= currentState.getModelScore() ? 1 : 0;
+		} else if (nextState.getObjectiveScore() < currentState.getObjectiveScore()) {
+			direction = nextState.getModelScore() >= currentState.getModelScore() ? -1 : 0;
+		} else {
+			direction = 0;
+		}
+		if (direction == 0) {
+			return;
+		}
+		addFeatures(nextState, direction);
+		addFeatures(currentState, -direction);
+		numberOfUpdates++;
+	}
+
+	private void addFeatures(State state, double factor) {
+		for (AbstractFactor f : state.getFactorGraph().getFactors()) {
+			Vector features = f.getFeatureVector();
+			if (features == null) {
+				continue;
+			}
+			Vector templateDelta = delta.computeIfAbsent(f.getTemplate(), t -> new Vector());
+			for (String feature : features.getFeatureNames()) {
+				templateDelta.addToValue(feature, factor * features.getValueOfFeature(feature));
+			}
+		}
+	}
+
+	/**
+	 * Adds the scaled deltas of this learner to the given deltas.
+	 *
+	 * @param deltas
+	 * @param scale
+	 */
+	public void addTo(Map<AbstractTemplate<?>, Vector> deltas, double scale) {
+		for (Entry<AbstractTemplate<?>, Vector> e : delta.entrySet()) {
+			Vector target = deltas.computeIfAbsent(e.getKey(), t -> new Vector());
+			Vector source = e.getValue();
+			for (String feature : source.getFeatureNames()) {
+				target.addToValue(feature, scale * source.getValueOfFeature(feature));
+			}
+		}
+	}
+
+	/**
+	 * Adds the scaled deltas of this learner to the weights of their
+	 * templates.
+	 *
+	 * @param scale
+	 */
+	public void applyTo(double scale) {
+		for (Entry<AbstractTemplate<?>, Vector> e : delta.entrySet()) {
+			Vector weights = e.getKey().getWeightVector();
+			Vector source = e.getValue();
+			for (String feature : source.getFeatureNames()) {
+				weights.addToValue(feature, scale * source.getValueOfFeature(feature));
+			}
+		}
+	}
+
+	public int getNumberOfUpdates() {
+		return numberOfUpdates;
+	}
+}
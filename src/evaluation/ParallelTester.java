@@ -0,0 +1,111 @@
+package evaluation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import corpus.LabeledDocument;
+import sampling.Initializer;
+import sampling.Sampler;
+import variables.State;
+
+/**
+ * Parallel counterpart of Trainer.test(). The documents are predicted
+ * concurrently on a work-stealing pool. Documents with more tokens are
+ * started first, so that no long sentence is left over at the end. The
+ * sampler must allow concurrent calls of generateChain() and the model must
+ * not change during testing.
+ * 
+ * The predictions are returned in the order of the documents. Optionally, they
+ * are also passed to a consumer (e.g. to write result files or to update
+ * evaluation scores) as soon as they and all predictions of preceding
+ * documents are finished. The consumer is always called by one thread at a
+ * time and in document order, so it does not need to be thread-safe.
+ */
+public class ParallelTester {
+
+	private static Logger log = LogManager.getFormatterLogger(ParallelTester.class.getName());
+
+	private ForkJoinPool pool;
+
+	public ParallelTester(int parallelism) {
+		this(new ForkJoinPool(parallelism));
+	}
+
+	public ParallelTester(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	public <DocumentT extends LabeledDocument<State, ?>> List<State> test(Sampler<State, ?> sampler,
+			Initializer<DocumentT, State> initializer, List<DocumentT> documents) {
+		return test(sampler, initializer, documents, null);
+	}
+
+	public <DocumentT extends LabeledDocument<State, ?>> List<State> test(Sampler<State, ?> sampler,
+			Initializer<DocumentT, State> initializer, List<DocumentT> documents, Consumer<State> predictionConsumer) {
+		long startTime = System.currentTimeMillis();
+		OrderedPredictions predictions = new OrderedPredictions(documents.size(), predictionConsumer);
+		List<Integer> longestFirst = new ArrayList<>();
+		for (int i = 0; i < documents.size(); i++) {
+			longestFirst.add(i);
+		}
+		longestFirst.sort(Comparator.comparingInt((Integer i) -> documents.get(i).getTokens().size()).reversed());
+
+		List<ForkJoinTask<?>> tasks = new ArrayList<>();
+		for (int index : longestFirst) {
+			DocumentT document = documents.get(index);
+			tasks.add(pool.submit(() -> {
+				State initialState = initializer.getInitialState(document);
+				List<State> chain = sampler.generateChain(initialState);
+				State prediction = chain.isEmpty() ? initialState : chain.get(chain.size() - 1);
+				predictions.add(index, prediction);
+			}));
+		}
+		for (ForkJoinTask<?> task : tasks) {
+			task.join();
+		}
+		log.info("Predicted %s documents in %s ms using %s threads", documents.size(),
+				System.currentTimeMillis() - startTime, pool.getParallelism());
+		return predictions.getPredictions();
+	}
+
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Collects the predictions and passes them to the consumer in document
+	 * order.
+	 */
+	private static class OrderedPredictions {
+		private State[] predictions;
+		private Consumer<State> consumer;
+		private int nextIndexToConsume = 0;
+
+		public OrderedPredictions(int numberOfDocuments, Consumer<State> consumer) {
+			this.predictions = new State[numberOfDocuments];
+			this.consumer = consumer;
+		}
+
+		public synchronized void add(int index, State prediction) {
+			predictions[index] = prediction;
+			while (nextIndexToConsume < predictions.length && predictions[nextIndexToConsume] != null) {
+				if (consumer != null) {
+					consumer.accept(predictions[nextIndexToConsume]);
+				}
+				nextIndexToConsume++;
+			}
+		}
+
+		public synchronized List<State> getPredictions() {
+			return new ArrayList<>(Arrays.asList(predictions));
+		}
+	}
+}
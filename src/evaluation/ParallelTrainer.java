@@ -0,0 +1,153 @@
+package evaluation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import corpus.LabeledDocument;
+import learning.DefaultLearner;
+import learning.Vector;
+import learning.callbacks.EpochCallback;
+import learning.callbacks.InstanceCallback;
+import sampling.Initializer;
+import sampling.Sampler;
+import templates.AbstractTemplate;
+import variables.State;
+
+/**
+ * Parallel counterpart of Trainer.train(). The documents of each epoch are
+ * processed in mini-batches. The chains of all documents of a batch are
+ * sampled concurrently on a work-stealing pool. The sampler must allow
+ * concurrent calls of generateChain().
+ *
+ * The weights of the model are not changed while a batch is sampled, so the
+ * concurrent chains only read them. Each update that the sampler requests is
+ * turned into a weight delta right away, with the same perceptron rule as the
+ * DefaultLearner: if the model ranks the two states differently than the
+ * objective, the difference of their features is added to (or subtracted
+ * from) the delta of the document. After the batch, the mean delta of all
+ * documents is scaled by the current learning rate of the learner and applied
+ * to the weights once. Thus, the learned weights do not depend on the number
+ * of threads.
+ *
+ * The instance and epoch callbacks are called like by the Trainer, with the
+ * difference that all documents of a batch are started before the first one
+ * ends. Since the ParallelTrainer is not a Trainer, the callbacks receive null
+ * as caller.
+ */
+public class ParallelTrainer {
+
+	private static Logger log = LogManager.getFormatterLogger(ParallelTrainer.class.getName());
+
+	private ForkJoinPool pool;
+	private int batchSize;
+	private List<InstanceCallback> instanceCallbacks = new ArrayList<>();
+	private List<EpochCallback> epochCallbacks = new ArrayList<>();
+
+	/**
+	 *
+	 * @param pool
+	 * @param batchSize
+	 *            the number of documents that are sampled concurrently and
+	 *            whose updates are averaged
+	 */
+	public ParallelTrainer(ForkJoinPool pool, int batchSize) {
+		this.pool = pool;
+		this.batchSize = batchSize;
+	}
+
+	public void addInstanceCallback(InstanceCallback callback) {
+		instanceCallbacks.add(callback);
+	}
+
+	public void addEpochCallback(EpochCallback callback) {
+		epochCallbacks.add(callback);
+	}
+
+	/**
+	 * Trains the model of the given learner. The learner itself is only used
+	 * for its current learning rate; register it as instance callback so that
+	 * the learning rate decays as with the Trainer.
+	 *
+	 * @param sampler
+	 * @param initializer
+	 * @param learner
+	 * @param documents
+	 * @param numberOfEpochs
+	 */
+	public <DocumentT extends LabeledDocument<State, State>> void train(Sampler<State, State> sampler,
+			Initializer<DocumentT, State> initializer, DefaultLearner<State> learner, List<DocumentT> documents,
+			int numberOfEpochs) {
+		for (int epoch = 0; epoch < numberOfEpochs; epoch++) {
+			long startTime = System.currentTimeMillis();
+			log.info("Epoch: %s/%s", epoch + 1, numberOfEpochs);
+			for (EpochCallback callback : epochCallbacks) {
+				callback.onStartEpoch(null, epoch, numberOfEpochs, documents.size());
+			}
+			for (int from = 0; from < documents.size(); from += batchSize) {
+				int to = Math.min(from + batchSize, documents.size());
+				trainBatch(sampler, initializer, learner, documents, from, to, epoch, numberOfEpochs);
+			}
+			for (EpochCallback callback : epochCallbacks) {
+				callback.onEndEpoch(null, epoch, numberOfEpochs, documents.size());
+			}
+			log.info("Epoch %s took %s ms", epoch + 1, System.currentTimeMillis() - startTime);
+		}
+	}
+
+	private <DocumentT extends LabeledDocument<State, State>> void trainBatch(Sampler<State, State> sampler,
+			Initializer<DocumentT, State> initializer, DefaultLearner<State> learner, List<DocumentT> documents,
+			int from, int to, int epoch, int numberOfEpochs) {
+		List<GradientLearner> documentLearners = new ArrayList<>();
+		List<ForkJoinTask<?>> tasks = new ArrayList<>();
+		for (int i = from; i < to; i++) {
+			DocumentT document = documents.get(i);
+			for (InstanceCallback callback : instanceCallbacks) {
+				callback.onStartInstance(null, document, i, documents.size(), epoch, numberOfEpochs);
+			}
+			GradientLearner documentLearner = new GradientLearner();
+			documentLearners.add(documentLearner);
+			tasks.add(pool.submit(() -> {
+				State initialState = initializer.getInitialState(document);
+				sampler.generateChain(initialState, document.getGoldResult(), documentLearner);
+			}));
+		}
+		for (ForkJoinTask<?> task : tasks) {
+			task.join();
+		}
+
+		Map<AbstractTemplate<?>, Vector> meanDelta = new HashMap<>();
+		int numberOfUpdates = 0;
+		for (GradientLearner documentLearner : documentLearners) {
+			documentLearner.addTo(meanDelta, 1.0 / documentLearners.size());
+			numberOfUpdates += documentLearner.getNumberOfUpdates();
+		}
+		double alpha = learner.currentAlpha;
+		for (Entry<AbstractTemplate<?>, Vector> e : meanDelta.entrySet()) {
+			Vector weights = e.getKey().getWeightVector();
+			Vector delta = e.getValue();
+			for (String feature : delta.getFeatureNames()) {
+				weights.addToValue(feature, alpha * delta.getValueOfFeature(feature));
+			}
+		}
+		learner.updates += numberOfUpdates;
+		log.debug("Sampled %s documents, averaged %s updates", to - from, numberOfUpdates);
+
+		for (int i = from; i < to; i++) {
+			for (InstanceCallback callback : instanceCallbacks) {
+				callback.onEndInstance(null, documents.get(i), i, documents.size(), epoch, numberOfEpochs);
+			}
+		}
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+}
@@ -0,0 +1,121 @@
+package evaluation;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import corpus.Document;
+import learning.Learner;
+import learning.Model;
+import learning.Trainer;
+import learning.Vector;
+import learning.callbacks.EpochCallback;
+import learning.callbacks.InstanceCallback;
+import templates.AbstractTemplate;
+import variables.State;
+
+/**
+ * Perceptron learner whose learning rate alpha and L2 regularization strength
+ * omega change linearly from their initial to their final value over the
+ * epochs of the training. Each update adds alpha times the feature difference
+ * of the two states, with the same rule as the DefaultLearner. Each update
+ * also shrinks all weights by the factor (1 - alpha*omega). Since shrinking
+ * touches every weight, it is applied once at the end of each document, for
+ * all updates of the document together.
+ *
+ * Register the learner as instance and epoch callback of the trainer. The
+ * learner counts the epochs itself, so that the schedule continues if a model
+ * is trained in several calls of Trainer.train(), as in successive halving.
+ */
+public class ScheduledLearner implements Learner<State>, InstanceCallback, EpochCallback {
+
+	private static Logger log = LogManager.getFormatterLogger(ScheduledLearner.class.getName());
+
+	private Model<State> model;
+	private int numberOfEpochs;
+	private double initialAlpha;
+	private double finalAlpha;
+	private double initialOmega;
+	private double finalOmega;
+
+	private int epoch = 0;
+	public double currentAlpha;
+	public double currentOmega;
+	public int updates = 0;
+	/**
+	 * The product of the shrink factors of the updates since the weights were
+	 * shrunk the last time.
+	 */
+	private double pendingDecay = 1;
+
+	/**
+	 *
+	 * @param model
+	 * @param numberOfEpochs
+	 *            the number of epochs after which alpha and omega reach their
+	 *            final values
+	 * @param initialAlpha
+	 * @param finalAlpha
+	 * @param initialOmega
+	 * @param finalOmega
+	 */
+	public ScheduledLearner(Model<State> model, int numberOfEpochs, double initialAlpha, double finalAlpha,
+			double initialOmega, double finalOmega) {
+		this.model = model;
+		this.numberOfEpochs = numberOfEpochs;
+		this.initialAlpha = initialAlpha;
+		this.finalAlpha = finalAlpha;
+		this.initialOmega = initialOmega;
+		this.finalOmega = finalOmega;
+		this.currentAlpha = initialAlpha;
+		this.currentOmega = initialOmega;
+	}
+
+	@Override
+	public void onStartEpoch(Trainer caller, int epoch, int numberOfEpochs, int numberOfInstances) {
+		double progress = this.numberOfEpochs > 1 ? Math.min(1, (double) this.epoch / (this.numberOfEpochs - 1))
+				: 1;
+		currentAlpha = initialAlpha + progress * (finalAlpha - initialAlpha);
+		currentOmega = initialOmega + progress * (finalOmega - initialOmega);
+		log.debug("Epoch %s: alpha=%s, omega=%s", this.epoch + 1, currentAlpha, currentOmega);
+		this.epoch++;
+	}
+
+	@Override
+	public void update(State currentState, State nextState) {
+		GradientLearner gradient = new GradientLearner();
+		gradient.update(currentState, nextState);
+		if (gradient.getNumberOfUpdates() == 0) {
+			return;
+		}
+		pendingDecay *= 1 - currentAlpha * currentOmega;
+		gradient.applyTo(currentAlpha);
+		updates++;
+	}
+
+	@Override
+	public void onEndInstance(Trainer caller, Document<?> document, int indexOfDocument, int numberOfDocuments,
+			int epoch, int numberOfEpochs) {
+		applyDecay();
+	}
+
+	@Override
+	public void onEndEpoch(Trainer caller, int epoch, int numberOfEpochs, int numberOfInstances) {
+		applyDecay();
+	}
+
+	/**
+	 * Shrinks all weights by the decay of the updates since the last call.
+	 */
+	private void applyDecay() {
+		if (pendingDecay == 1) {
+			return;
+		}
+		for (AbstractTemplate<State> template : model.getTemplates()) {
+			Vector weights = template.getWeightVector();
+			for (String feature : weights.getFeatureNames()) {
+				weights.set(feature, pendingDecay * weights.getValueOfFeature(feature));
+			}
+		}
+		pendingDecay = 1;
+	}
+}
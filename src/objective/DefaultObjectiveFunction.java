@@ -2,15 +2,11 @@ package objective;
 
 import java.io.Serializable;
 import java.util.Collection;
-import java.util.Map.Entry;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import com.google.common.collect.Multimap;
-
 import learning.ObjectiveFunction;
-import utility.VariableID;
 import variables.EntityAnnotation;
 import variables.ArgumentRole;
 import variables.State;
@@ -81,26 +77,24 @@ public class DefaultObjectiveFunction extends ObjectiveFunction<State, State>imp
 	}
 
 	private double argumentScore(EntityAnnotation entity1, EntityAnnotation entity2) {
-		Multimap<ArgumentRole, VariableID> arguments1 = entity1.getReadOnlyArguments();
-		Multimap<ArgumentRole, VariableID> arguments2 = entity2.getReadOnlyArguments();
-
-		if (arguments1.keySet().size() == 0)
+		if (entity1.getNumberOfArguments() == 0)
 			return 1;
 
 		int matchingRoles = 0;
 
 		// count arguments of entity1 that are also in entity2
-		for (Entry<ArgumentRole, VariableID> argument1 : arguments1.entries()) {
-			ArgumentRole argRole1 = argument1.getKey();
-			EntityAnnotation argEntity1 = entity1.getEntity(argument1.getValue());
+		for (int i = 0; i < entity1.getNumberOfArguments(); i++) {
+			ArgumentRole argRole1 = entity1.getArgumentRole(i);
+			EntityAnnotation argEntity1 = entity1.getEntity(entity1.getArgumentID(i));
 			/*
 			 * Since there are possibly several arguments with the same role,
 			 * check if there is at least one that matches (overlaps)
 			 * argEntity1.
 			 */
-			Collection<VariableID> argsForRole2 = arguments2.get(argRole1);
-			for (VariableID argForRoleEntityID2 : argsForRole2) {
-				EntityAnnotation argEntity2 = entity2.getEntity(argForRoleEntityID2);
+			for (int j = 0; j < entity2.getNumberOfArguments(); j++) {
+				if (!argRole1.equals(entity2.getArgumentRole(j)))
+					continue;
+				EntityAnnotation argEntity2 = entity2.getEntity(entity2.getArgumentID(j));
 				if (overlapScore(argEntity1, argEntity2) > 0) {
 					matchingRoles++;
 					// only count one match per argument
@@ -108,7 +102,7 @@ public class DefaultObjectiveFunction extends ObjectiveFunction<State, State>imp
 				}
 			}
 		}
-		return matchingRoles / arguments1.size();
+		return matchingRoles / entity1.getNumberOfArguments();
 	}
 
 	public static double overlapScore(EntityAnnotation entity, EntityAnnotation goldEntity) {
@@ -0,0 +1,118 @@
+package sampler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.ToDoubleFunction;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Draws elements with a probability proportional to their weights in constant
+ * time (Vose's alias method). Building the table takes linear time in the
+ * number of elements. All random numbers are taken from the given
+ * SplittableRandom, so that a sampling run is reproducible given its seed.
+ * Negative weights are treated as zero. If all weights are zero, the elements
+ * are drawn uniformly.
+ *
+ * @param <T>
+ */
+public class AliasTable<T> {
+
+	private static Logger log = LogManager.getFormatterLogger(AliasTable.class.getName());
+
+	private final List<T> elements;
+	private final double[] probabilities;
+	private final int[] aliases;
+
+	public AliasTable(List<T> elements, ToDoubleFunction<? super T> weightFunction) {
+		if (elements.isEmpty()) {
+			throw new IllegalArgumentException("Cannot create an alias table without elements.");
+		}
+		this.elements = new ArrayList<>(elements);
+		int n = elements.size();
+		this.probabilities = new double[n];
+		this.aliases = new int[n];
+
+		double[] weights = new double[n];
+		double totalWeight = 0;
+		for (int i = 0; i < n; i++) {
+			double weight = weightFunction.applyAsDouble(elements.get(i));
+			if (weight < 0 || Double.isNaN(weight)) {
+				log.warn("Invalid weight %s for element %s. Weight is set to 0.", weight, elements.get(i));
+				weight = 0;
+			}
+			weights[i] = weight;
+			totalWeight += weight;
+		}
+		// scale the weights so that their average is 1
+		double[] scaledWeights = new double[n];
+		for (int i = 0; i < n; i++) {
+			scaledWeights[i] = totalWeight > 0 ? weights[i] * n / totalWeight : 1;
+		}
+
+		int[] small = new int[n];
+		int[] large = new int[n];
+		int numberOfSmall = 0;
+		int numberOfLarge = 0;
+		for (int i = 0; i < n; i++) {
+			if (scaledWeights[i] < 1) {
+				small[numberOfSmall++] = i;
+			} else {
+				large[numberOfLarge++] = i;
+			}
+		}
+		while (numberOfSmall > 0 && numberOfLarge > 0) {
+			int s = small[--numberOfSmall];
+			int l = large[--numberOfLarge];
+			probabilities[s] = scaledWeights[s];
+			aliases[s] = l;
+			scaledWeights[l] = (scaledWeights[l] + scaledWeights[s]) - 1;
+			if (scaledWeights[l] < 1) {
+				small[numberOfSmall++] = l;
+			} else {
+				large[numberOfLarge++] = l;
+			}
+		}
+		// the remaining entries are (up to rounding errors) exactly 1
+		while (numberOfLarge > 0) {
+			probabilities[large[--numberOfLarge]] = 1;
+		}
+		while (numberOfSmall > 0) {
+			probabilities[small[--numberOfSmall]] = 1;
+		}
+	}
+
+	/**
+	 * Draws a single element.
+	 *
+	 * @param random
+	 * @return
+	 */
+	public T draw(SplittableRandom random) {
+		int column = random.nextInt(probabilities.length);
+		boolean keepColumn = random.nextDouble() < probabilities[column];
+		return elements.get(keepColumn ? column : aliases[column]);
+	}
+
+	/**
+	 * Draws the given number of elements independently (with replacement),
+	 * e.g. one for each chain of a multi-chain run.
+	 *
+	 * @param random
+	 * @param numberOfSamples
+	 * @return
+	 */
+	public List<T> draw(SplittableRandom random, int numberOfSamples) {
+		List<T> samples = new ArrayList<>(numberOfSamples);
+		for (int i = 0; i < numberOfSamples; i++) {
+			samples.add(draw(random));
+		}
+		return samples;
+	}
+
+	public int size() {
+		return elements.size();
+	}
+}
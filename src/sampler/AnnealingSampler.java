@@ -0,0 +1,159 @@
+package sampler;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import learning.ObjectiveFunction;
+import learning.Scorer;
+import variables.State;
+
+/**
+ * This sampler implements simulated annealing. In each sampling step, a
+ * single proposal is drawn uniformly from the proposals of each explorer and
+ * only this proposal is applied and scored. An improvement is always
+ * accepted, a deterioration by delta with probability exp(delta /
+ * temperature). The temperature follows the given TemperatureSchedule. The
+ * chain ends early as soon as none of the proposals of the last
+ * acceptanceWindow steps was accepted.
+ * 
+ * Since the temperature and the acceptance statistics belong to the current
+ * chain, an instance of this sampler can not generate several chains
+ * concurrently. They are kept if generateChain() is called with the last
+ * state of the previous call, so that the sampler can also be driven one
+ * step at a time by a wrapping sampler.
+ */
+public class AnnealingSampler extends GreedySampler<ProposalExplorer> {
+
+	private static Logger log = LogManager.getFormatterLogger(AnnealingSampler.class.getName());
+
+	public static final int DEFAULT_ACCEPTANCE_WINDOW = 20;
+
+	private TemperatureSchedule schedule;
+	private SplittableRandom random;
+	private int acceptanceWindow = DEFAULT_ACCEPTANCE_WINDOW;
+
+	private double temperature;
+	/**
+	 * Ring buffer of the number of accepted proposals in the last steps.
+	 */
+	private int[] acceptedProposals;
+	private int[] sampledProposals;
+	private int acceptedInWindow;
+	private int sampledInWindow;
+	private int currentStep;
+
+	public AnnealingSampler(Scorer<State> scorer, ObjectiveFunction<State, State> objective,
+			List<ProposalExplorer> explorers, int numberOfSteps, TemperatureSchedule schedule, long seed) {
+		this(scorer, objective, explorers, numberOfSteps, schedule, new SplittableRandom(seed));
+	}
+
+	public AnnealingSampler(Scorer<State> scorer, ObjectiveFunction<State, State> objective,
+			List<ProposalExplorer> explorers, int numberOfSteps, TemperatureSchedule schedule,
+			SplittableRandom random) {
+		super(scorer, objective, explorers, numberOfSteps);
+		this.schedule = schedule;
+		this.random = random;
+	}
+
+	public int getAcceptanceWindow() {
+		return acceptanceWindow;
+	}
+
+	/**
+	 * Sets the number of steps over which the acceptance rate is computed. The
+	 * chain ends as soon as no proposal was accepted within this number of
+	 * steps.
+	 * 
+	 * @param acceptanceWindow
+	 */
+	public void setAcceptanceWindow(int acceptanceWindow) {
+		this.acceptanceWindow = acceptanceWindow;
+	}
+
+	public double getTemperature() {
+		return temperature;
+	}
+
+	public TemperatureSchedule getSchedule() {
+		return schedule;
+	}
+
+	/**
+	 * Returns a new sampler with the same configuration and an independent
+	 * random number generator that is split off from the generator of this
+	 * sampler. Since an AnnealingSampler keeps the temperature and acceptance
+	 * window of the current chain, concurrent chains need separate samplers.
+	 *
+	 * @return
+	 */
+	public AnnealingSampler split() {
+		AnnealingSampler sampler = new AnnealingSampler(scorer, objective, explorers, numberOfSteps, schedule,
+				random.split());
+		sampler.setAcceptanceWindow(acceptanceWindow);
+		sampler.setStoppingCriterion(stoppingCriterion);
+		return sampler;
+	}
+
+	@Override
+	protected void startChain() {
+		temperature = schedule.getInitialTemperature();
+		acceptedProposals = new int[acceptanceWindow];
+		sampledProposals = new int[acceptanceWindow];
+		acceptedInWindow = 0;
+		sampledInWindow = 0;
+		currentStep = 0;
+	}
+
+	@Override
+	protected State selectNextState(ProposalExplorer explorer, State currentState, State goldResult,
+			boolean training) {
+		List<Proposal> proposals = explorer.getProposals(currentState);
+		if (proposals.isEmpty()) {
+			return null;
+		}
+		Proposal proposal = proposals.get(random.nextInt(proposals.size()));
+		State candidateState = new State(currentState, true);
+		proposal.applyTo(candidateState);
+		score(candidateState, goldResult, training);
+		return candidateState;
+	}
+
+	@Override
+	protected boolean accept(State candidateState, State currentState, boolean training) {
+		double delta = getScore(candidateState, training) - getScore(currentState, training);
+		boolean accepted = delta >= 0 || random.nextDouble() < Math.exp(delta / temperature);
+		int slot = currentStep % acceptanceWindow;
+		sampledProposals[slot]++;
+		sampledInWindow++;
+		if (accepted) {
+			acceptedProposals[slot]++;
+			acceptedInWindow++;
+		}
+		return accepted;
+	}
+
+	@Override
+	protected boolean isChainFinished(int step, State currentState) {
+		// count the steps of the whole chain, which may span several calls
+		double acceptanceRate = sampledInWindow == 0 ? 0 : (double) acceptedInWindow / sampledInWindow;
+		temperature = schedule.nextTemperature(currentStep + 1, temperature, acceptanceRate);
+		boolean windowFilled = currentStep + 1 >= acceptanceWindow;
+		currentStep++;
+		int slot = currentStep % acceptanceWindow;
+		if (windowFilled && acceptedInWindow == 0) {
+			log.debug("No proposal accepted during the last %s steps. Stop chain after step %s at temperature %s",
+					acceptanceWindow, currentStep, temperature);
+			return true;
+		}
+		// drop the oldest step from the window
+		acceptedInWindow -= acceptedProposals[slot];
+		sampledInWindow -= sampledProposals[slot];
+		acceptedProposals[slot] = 0;
+		sampledProposals[slot] = 0;
+		return false;
+	}
+
+}
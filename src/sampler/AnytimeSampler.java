@@ -0,0 +1,127 @@
+package sampler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import learning.Learner;
+import sampling.Sampler;
+import variables.State;
+
+/**
+ * Gives each document a fixed time budget instead of a fixed number of
+ * sampling steps. Like the EarlyStoppingSampler, this sampler repeatedly runs
+ * a sampler that performs a single sampling step per chain (e.g. a
+ * DefaultSampler with numberOfSteps = 1). The deadline is checked between the
+ * steps and, since the initial state passes it on to all its copies, by
+ * Proposals.toStates() and Proposals.streamStates() while the explorers turn
+ * their proposals into states. When the deadline passes, the best state found
+ * so far is appended to the chain, so that it becomes the result of e.g.
+ * Trainer.test(). If no step ran at all, the chain consists of the initial
+ * state.
+ */
+public class AnytimeSampler implements Sampler<State, State> {
+
+	private static Logger log = LogManager.getFormatterLogger(AnytimeSampler.class.getName());
+
+	private Sampler<State, State> stepSampler;
+	private long timeBudgetMillis;
+	private int maxNumberOfSteps;
+	private ChainStatistics chainStatistics = new ChainStatistics();
+	private AtomicLong numberOfExpiredDeadlines = new AtomicLong();
+
+	/**
+	 * 
+	 * @param stepSampler
+	 *            a sampler that performs exactly one sampling step per chain
+	 * @param timeBudgetMillis
+	 *            the time budget per document in milliseconds
+	 * @param maxNumberOfSteps
+	 *            the maximum number of steps per chain, even if there is time
+	 *            left
+	 */
+	public AnytimeSampler(Sampler<State, State> stepSampler, long timeBudgetMillis, int maxNumberOfSteps) {
+		this.stepSampler = stepSampler;
+		this.timeBudgetMillis = timeBudgetMillis;
+		this.maxNumberOfSteps = maxNumberOfSteps;
+	}
+
+	@Override
+	public List<State> generateChain(State initialState, State goldResult, Learner<State> learner) {
+		return generateChain(initialState, goldResult, learner, true);
+	}
+
+	@Override
+	public List<State> generateChain(State initialState) {
+		return generateChain(initialState, null, null, false);
+	}
+
+	private List<State> generateChain(State initialState, State goldResult, Learner<State> learner,
+			boolean training) {
+		initialState.setDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeBudgetMillis));
+		List<State> generatedChain = new ArrayList<>();
+		State currentState = initialState;
+		State bestState = null;
+		int step = 0;
+		while (step < maxNumberOfSteps && !currentState.isPastDeadline()) {
+			List<State> stepChain = training ? stepSampler.generateChain(currentState, goldResult, learner)
+					: stepSampler.generateChain(currentState);
+			step++;
+			if (stepChain.isEmpty()) {
+				log.warn("Sampler %s did not generate any state for state %s", stepSampler, currentState.getID());
+				break;
+			}
+			for (State state : stepChain) {
+				if (bestState == null || getScore(state, training) > getScore(bestState, training)) {
+					bestState = state;
+				}
+			}
+			generatedChain.addAll(stepChain);
+			currentState = stepChain.get(stepChain.size() - 1);
+		}
+		boolean deadlineExpired = currentState.isPastDeadline();
+		if (deadlineExpired) {
+			numberOfExpiredDeadlines.incrementAndGet();
+			log.debug("Deadline of %s ms passed after %s steps", timeBudgetMillis, step);
+			if (bestState != null && bestState != currentState) {
+				generatedChain.add(bestState);
+			}
+		}
+		if (generatedChain.isEmpty()) {
+			// no step ran, e.g. because the budget was already spent
+			generatedChain.add(initialState);
+		}
+		initialState.setDeadline(0);
+		for (State state : generatedChain) {
+			state.setDeadline(0);
+		}
+		chainStatistics.record(initialState, step, false);
+		return generatedChain;
+	}
+
+	private double getScore(State state, boolean training) {
+		return training ? state.getObjectiveScore() : state.getModelScore();
+	}
+
+	public long getTimeBudgetMillis() {
+		return timeBudgetMillis;
+	}
+
+	/**
+	 * The number of chains that were ended by their deadline.
+	 * 
+	 * @return
+	 */
+	public long getNumberOfExpiredDeadlines() {
+		return numberOfExpiredDeadlines.get();
+	}
+
+	public ChainStatistics getChainStatistics() {
+		return chainStatistics;
+	}
+
+}
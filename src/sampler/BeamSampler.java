@@ -0,0 +1,167 @@
+package sampler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import learning.Learner;
+import learning.ObjectiveFunction;
+import learning.Scorer;
+import sampling.Sampler;
+import variables.State;
+
+/**
+ * This sampler performs a beam search. Instead of a single current state, it
+ * keeps the beamWidth best states of each step. In each step, all states in
+ * the beam are expanded with all explorers, states with the same annotations
+ * are dropped and the beamWidth best states out of the previous beam and the
+ * new states form the next beam. States are ranked by their objective score
+ * during training and by their model score otherwise. The search stops as
+ * soon as no new state is better than the best state of the previous beam or
+ * when the maximum number of steps is reached. The chain consists of the best
+ * state of each step.
+ * 
+ * If a ForkJoinPool is given, the states of a step are generated and scored
+ * in parallel on this pool. Since the order of the generated states is
+ * preserved and ties are resolved in favor of the earlier state, the result
+ * does not depend on the number of threads.
+ */
+public class BeamSampler implements Sampler<State, State> {
+
+	private static Logger log = LogManager.getFormatterLogger(BeamSampler.class.getName());
+
+	private Scorer<State> scorer;
+	private ObjectiveFunction<State, State> objective;
+	private List<StreamingExplorer> explorers;
+	private int beamWidth;
+	private int numberOfSteps;
+	private ForkJoinPool pool;
+
+	private ChainStatistics chainStatistics = new ChainStatistics();
+
+	public BeamSampler(Scorer<State> scorer, ObjectiveFunction<State, State> objective,
+			List<StreamingExplorer> explorers, int beamWidth, int numberOfSteps) {
+		this(scorer, objective, explorers, beamWidth, numberOfSteps, null);
+	}
+
+	public BeamSampler(Scorer<State> scorer, ObjectiveFunction<State, State> objective,
+			List<StreamingExplorer> explorers, int beamWidth, int numberOfSteps, ForkJoinPool pool) {
+		if (beamWidth < 1) {
+			throw new IllegalArgumentException("Beam width must be positive, but was " + beamWidth);
+		}
+		this.scorer = scorer;
+		this.objective = objective;
+		this.explorers = explorers;
+		this.beamWidth = beamWidth;
+		this.numberOfSteps = numberOfSteps;
+		this.pool = pool;
+	}
+
+	@Override
+	public List<State> generateChain(State initialState, State goldResult, Learner<State> learner) {
+		return generateChain(initialState, goldResult, learner, true);
+	}
+
+	@Override
+	public List<State> generateChain(State initialState) {
+		return generateChain(initialState, null, null, false);
+	}
+
+	private List<State> generateChain(State initialState, State goldResult, Learner<State> learner,
+			boolean training) {
+		List<State> generatedChain = new ArrayList<>();
+		score(Arrays.asList(initialState), goldResult, training);
+		List<State> beam = Arrays.asList(initialState);
+		int step = 0;
+		boolean converged = false;
+		while (step < numberOfSteps && !converged) {
+			step++;
+			List<State> nextBeam = expandBeam(beam, goldResult, training);
+			State previousBestState = beam.get(0);
+			State bestState = nextBeam.get(0);
+			if (training && bestState != previousBestState) {
+				learner.update(previousBestState, bestState);
+			}
+			beam = nextBeam;
+			generatedChain.add(bestState);
+			converged = bestState == previousBestState;
+		}
+		log.debug("Beam search stopped after %s steps (converged: %s)", step, converged);
+		chainStatistics.record(initialState, step, converged);
+		return generatedChain;
+	}
+
+	/**
+	 * Expands all states of the beam and returns the best states out of the
+	 * current beam and its distinct successors, ordered from best to worst.
+	 * 
+	 * @param beam
+	 * @param goldResult
+	 * @param training
+	 * @return
+	 */
+	private List<State> expandBeam(List<State> beam, State goldResult, boolean training) {
+		List<State> candidates = new ArrayList<>(beam);
+		candidates.addAll(generateNextStates(beam));
+		// the states of the current beam come first and are therefore kept
+		List<State> distinctCandidates = DeduplicatingExplorer.removeDuplicates(candidates);
+		List<State> newStates = distinctCandidates.subList(beam.size(), distinctCandidates.size());
+		score(newStates, goldResult, training);
+		log.debug("Expanded beam of %s states to %s new states (%s duplicates)", beam.size(), newStates.size(),
+				candidates.size() - distinctCandidates.size());
+		return TopKSelector.selectTopK(distinctCandidates.stream(), beamWidth,
+				state -> training ? state.getObjectiveScore() : state.getModelScore());
+	}
+
+	private List<State> generateNextStates(List<State> beam) {
+		if (pool == null) {
+			return beam.stream().flatMap(state -> explorers.stream().flatMap(e -> e.streamNextStates(state)))
+					.collect(Collectors.toList());
+		}
+		return pool.submit(() -> beam.parallelStream()
+				.flatMap(state -> explorers.stream().flatMap(e -> e.streamNextStates(state)))
+				.collect(Collectors.toList())).join();
+	}
+
+	private void score(List<State> states, State goldResult, boolean training) {
+		if (pool == null) {
+			scorer.score(states, false);
+			if (training) {
+				for (State state : states) {
+					objective.score(state, goldResult);
+				}
+			}
+		} else {
+			pool.submit(() -> states.parallelStream().forEach(state -> {
+				scorer.score(Arrays.asList(state), false);
+				if (training) {
+					objective.score(state, goldResult);
+				}
+			})).join();
+		}
+	}
+
+	public int getBeamWidth() {
+		return beamWidth;
+	}
+
+	public int getNumberOfSteps() {
+		return numberOfSteps;
+	}
+
+	/**
+	 * The number of steps until convergence of the chains that were generated
+	 * by this sampler.
+	 * 
+	 * @return
+	 */
+	public ChainStatistics getChainStatistics() {
+		return chainStatistics;
+	}
+
+}
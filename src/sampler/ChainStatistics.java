@@ -0,0 +1,81 @@
+package sampler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import variables.State;
+
+/**
+ * Collects the number of sampling steps of each generated chain, per document.
+ * All methods can be called concurrently.
+ */
+public class ChainStatistics {
+
+	private Map<String, Integer> stepsPerDocument = new ConcurrentHashMap<>();
+	private AtomicLong numberOfChains = new AtomicLong();
+	private AtomicLong numberOfConvergedChains = new AtomicLong();
+	private AtomicLong totalNumberOfSteps = new AtomicLong();
+
+	/**
+	 * Records a finished chain. The steps of a document are replaced by the
+	 * steps of its most recent chain.
+	 * 
+	 * @param initialState
+	 * @param numberOfSteps
+	 * @param converged
+	 *            true if the chain ended before the maximum number of steps
+	 */
+	public void record(State initialState, int numberOfSteps, boolean converged) {
+		if (initialState.getDocument() != null) {
+			stepsPerDocument.put(initialState.getDocument().getName(), numberOfSteps);
+		}
+		numberOfChains.incrementAndGet();
+		totalNumberOfSteps.addAndGet(numberOfSteps);
+		if (converged) {
+			numberOfConvergedChains.incrementAndGet();
+		}
+	}
+
+	public long getNumberOfChains() {
+		return numberOfChains.get();
+	}
+
+	public long getNumberOfConvergedChains() {
+		return numberOfConvergedChains.get();
+	}
+
+	public long getTotalNumberOfSteps() {
+		return totalNumberOfSteps.get();
+	}
+
+	public double getAverageNumberOfSteps() {
+		long chains = numberOfChains.get();
+		return chains == 0 ? 0 : (double) totalNumberOfSteps.get() / chains;
+	}
+
+	/**
+	 * The number of steps of the most recent chain of each document.
+	 * 
+	 * @return
+	 */
+	public Map<String, Integer> getStepsPerDocument() {
+		return new HashMap<>(stepsPerDocument);
+	}
+
+	public void clear() {
+		stepsPerDocument.clear();
+		numberOfChains.set(0);
+		numberOfConvergedChains.set(0);
+		totalNumberOfSteps.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ChainStatistics [chains=%s, converged=%s, steps=%s, average steps=%.2f]",
+				numberOfChains.get(), numberOfConvergedChains.get(), totalNumberOfSteps.get(),
+				getAverageNumberOfSteps());
+	}
+
+}
@@ -0,0 +1,100 @@
+package sampler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import sampling.Explorer;
+import variables.State;
+
+/**
+ * Wraps another explorer and removes all generated states that contain exactly
+ * the same annotations as a previously generated state of the same step (e.g.
+ * the unchanged states that several joined explorers add, or a contracted
+ * entity that equals a merge of two neighbors). States are compared by their
+ * structural hash and, in case of equal hashes, by their annotations. Thus,
+ * each distinct state is only scored once.
+ */
+public class DeduplicatingExplorer implements Explorer<State> {
+
+	private static Logger log = LogManager.getFormatterLogger(DeduplicatingExplorer.class.getName());
+
+	private Explorer<State> explorer;
+
+	private volatile int lastNumberOfDuplicates = 0;
+	private AtomicLong totalNumberOfDuplicates = new AtomicLong();
+
+	public DeduplicatingExplorer(Explorer<State> explorer) {
+		this.explorer = explorer;
+	}
+
+	@Override
+	public List<State> getNextStates(State previousState) {
+		List<State> generatedStates = explorer.getNextStates(previousState);
+		List<State> distinctStates = removeDuplicates(generatedStates);
+		int numberOfDuplicates = generatedStates.size() - distinctStates.size();
+		lastNumberOfDuplicates = numberOfDuplicates;
+		totalNumberOfDuplicates.addAndGet(numberOfDuplicates);
+		log.debug("Removed %s duplicates from %s generated states", numberOfDuplicates, generatedStates.size());
+		return distinctStates;
+	}
+
+	/**
+	 * Returns the given states without duplicates. The first occurrence of each
+	 * state is kept and the order of the states is preserved.
+	 * 
+	 * @param states
+	 * @return
+	 */
+	public static List<State> removeDuplicates(List<State> states) {
+		List<State> distinctStates = new ArrayList<>(states.size());
+		Map<Long, List<State>> statesByHash = new HashMap<>();
+		for (State state : states) {
+			List<State> candidates = statesByHash.get(state.getStructuralHash());
+			if (candidates == null) {
+				candidates = new ArrayList<>(1);
+				statesByHash.put(state.getStructuralHash(), candidates);
+			}
+			if (!containsSameAnnotations(candidates, state)) {
+				candidates.add(state);
+				distinctStates.add(state);
+			}
+		}
+		return distinctStates;
+	}
+
+	private static boolean containsSameAnnotations(List<State> candidates, State state) {
+		for (State candidate : candidates) {
+			if (candidate.hasSameAnnotations(state)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The number of duplicates that were removed in the most recent call of
+	 * getNextStates().
+	 * 
+	 * @return
+	 */
+	public int getLastNumberOfDuplicates() {
+		return lastNumberOfDuplicates;
+	}
+
+	/**
+	 * The number of duplicates that were removed since this explorer was
+	 * created.
+	 * 
+	 * @return
+	 */
+	public long getTotalNumberOfDuplicates() {
+		return totalNumberOfDuplicates.get();
+	}
+
+}
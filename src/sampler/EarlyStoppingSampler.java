@@ -0,0 +1,85 @@
+package sampler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import learning.Learner;
+import sampling.Sampler;
+import variables.State;
+
+/**
+ * Runs a sampler that performs a single sampling step per chain (e.g. a
+ * DefaultSampler with numberOfSteps = 1) repeatedly, until either the maximum
+ * number of steps is reached or the stopping criterion considers the chain as
+ * converged. This adds early stopping to samplers with a fixed number of
+ * steps.
+ */
+public class EarlyStoppingSampler implements Sampler<State, State> {
+
+	private static Logger log = LogManager.getFormatterLogger(EarlyStoppingSampler.class.getName());
+
+	private Sampler<State, State> stepSampler;
+	private int numberOfSteps;
+	private StoppingCriterion stoppingCriterion;
+	private ChainStatistics chainStatistics = new ChainStatistics();
+
+	/**
+	 * 
+	 * @param stepSampler
+	 *            a sampler that performs exactly one sampling step per chain
+	 * @param numberOfSteps
+	 *            the maximum number of steps per chain
+	 * @param stoppingCriterion
+	 */
+	public EarlyStoppingSampler(Sampler<State, State> stepSampler, int numberOfSteps,
+			StoppingCriterion stoppingCriterion) {
+		this.stepSampler = stepSampler;
+		this.numberOfSteps = numberOfSteps;
+		this.stoppingCriterion = stoppingCriterion;
+	}
+
+	@Override
+	public List<State> generateChain(State initialState, State goldResult, Learner<State> learner) {
+		return generateChain(initialState, goldResult, learner, true);
+	}
+
+	@Override
+	public List<State> generateChain(State initialState) {
+		return generateChain(initialState, null, null, false);
+	}
+
+	private List<State> generateChain(State initialState, State goldResult, Learner<State> learner,
+			boolean training) {
+		List<State> generatedChain = new ArrayList<>();
+		State currentState = initialState;
+		boolean converged = false;
+		for (int step = 0; step < numberOfSteps && !converged; step++) {
+			List<State> stepChain = training ? stepSampler.generateChain(currentState, goldResult, learner)
+					: stepSampler.generateChain(currentState);
+			if (stepChain.isEmpty()) {
+				log.warn("Sampler %s did not generate any state for state %s", stepSampler, currentState.getID());
+				break;
+			}
+			generatedChain.addAll(stepChain);
+			currentState = stepChain.get(stepChain.size() - 1);
+			converged = stoppingCriterion.isConverged(generatedChain, training);
+		}
+		chainStatistics.record(initialState, generatedChain.size(), converged);
+		if (converged) {
+			log.debug("Chain converged after %s steps", generatedChain.size());
+		}
+		return generatedChain;
+	}
+
+	public StoppingCriterion getStoppingCriterion() {
+		return stoppingCriterion;
+	}
+
+	public ChainStatistics getChainStatistics() {
+		return chainStatistics;
+	}
+
+}
@@ -5,20 +5,18 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import com.google.common.collect.HashMultimap;
-
 import evaluation.AnnotationUtils;
 import sampling.Explorer;
 import utility.VariableID;
-import variables.ArgumentRole;
 import variables.EntityAnnotation;
 import variables.State;
 
-public class ExhaustiveBoundaryExplorer implements Explorer<State> {
+public class ExhaustiveBoundaryExplorer implements Explorer<State>, ProposalExplorer, StreamingExplorer {
 
 	private static Logger log = LogManager.getFormatterLogger(ExhaustiveBoundaryExplorer.class.getName());
 
@@ -36,18 +34,28 @@ public class ExhaustiveBoundaryExplorer implements Explorer<State> {
 	}
 
 	public List<State> getNextStates(State previousState) {
-		List<State> generatedStates = new ArrayList<>();
+		return Proposals.toStates(previousState, getProposals(previousState));
+	}
+
+	@Override
+	public Stream<State> streamNextStates(State previousState) {
+		return Proposals.streamStates(previousState, getProposals(previousState));
+	}
+
+	@Override
+	public List<Proposal> getProposals(State previousState) {
+		List<Proposal> proposals = new ArrayList<>();
 		// merge neighboring/overlapping entities
-		generatedStates.addAll(generateStatesForBoundaries(previousState));
+		proposals.addAll(generateProposalsForBoundaries(previousState));
 		if (mergeNeighbors) {
-			generatedStates.addAll(generateStatesForNeighbors(previousState));
+			proposals.addAll(generateProposalsForNeighbors(previousState));
 		}
-		return generatedStates;
+		return proposals;
 
 	}
 
-	private List<State> generateStatesForBoundaries(State previousState) {
-		List<State> generatedStates = new ArrayList<State>();
+	private List<Proposal> generateProposalsForBoundaries(State previousState) {
+		List<Proposal> proposals = new ArrayList<>();
 		Set<VariableID> entities = previousState.getEditableEntityIDs();
 		for (VariableID entityID : entities) {
 			EntityAnnotation previousStatesEntity = previousState.getEntity(entityID);
@@ -56,19 +64,13 @@ public class ExhaustiveBoundaryExplorer implements Explorer<State> {
 			if (0 < from) {
 				if (!noOverlaps || !previousState.tokenHasAnnotation(from - 1)) {
 					// Expand left
-					State generatedState = new State(previousState);
-					EntityAnnotation entity = generatedState.getEntity(entityID);
-					entity.setBeginTokenIndex(from - 1);
-					generatedStates.add(generatedState);
+					proposals.add(Proposals.changeBeginTokenIndex(entityID, from - 1));
 				}
 			}
 			if (to < previousState.getDocument().getTokens().size()) {
 				if (!noOverlaps || !previousState.tokenHasAnnotation(to)) {
 					// Expand right
-					State generatedState = new State(previousState);
-					EntityAnnotation entity = generatedState.getEntity(entityID);
-					entity.setEndTokenIndex(to + 1);
-					generatedStates.add(generatedState);
+					proposals.add(Proposals.changeEndTokenIndex(entityID, to + 1));
 				}
 			}
 			if (to - from > 1) {
@@ -80,31 +82,24 @@ public class ExhaustiveBoundaryExplorer implements Explorer<State> {
 				{
 					if (!noOverlaps || !previousState.tokenHasAnnotation(from + 1)) {
 						// Contract left
-						State generatedState = new State(previousState);
-						EntityAnnotation entity = generatedState.getEntity(entityID);
-						entity.setBeginTokenIndex(from + 1);
-						generatedStates.add(generatedState);
+						proposals.add(Proposals.changeBeginTokenIndex(entityID, from + 1));
 					}
 				}
 				{
 					if (!noOverlaps || !previousState.tokenHasAnnotation(to - 1)) {
 						// Contract right
-						State generatedState = new State(previousState);
-						EntityAnnotation entity = generatedState.getEntity(entityID);
-						entity.setEndTokenIndex(to - 1);
-						generatedStates.add(generatedState);
+						proposals.add(Proposals.changeEndTokenIndex(entityID, to - 1));
 					}
 				}
 			}
 		}
 		// add an unchanged state
-		State generatedState = new State(previousState);
-		generatedStates.add(generatedState);
-		return generatedStates;
+		proposals.add(Proposals.doNothing());
+		return proposals;
 	}
 
-	private List<State> generateStatesForNeighbors(State previousState) {
-		List<State> generatedStates = new ArrayList<State>();
+	private List<Proposal> generateProposalsForNeighbors(State previousState) {
+		List<Proposal> proposals = new ArrayList<>();
 		Set<VariableID> previousStatesEntityIDs = previousState.getEditableEntityIDs();
 		// avoid duplicate merges by tracking all merged variable pairs
 		Set<MergedVariablePair> mergedVariablePairs = new HashSet<>();
@@ -114,25 +109,12 @@ public class ExhaustiveBoundaryExplorer implements Explorer<State> {
 				EntityAnnotation previousStatesEntity2 = previousState.getEntity(entityID2);
 				if (!mergedVariablePairs.contains(new MergedVariablePair(entityID1, entityID2))
 						&& areMatchingNeighbors(previousStatesEntity1, previousStatesEntity2)) {
-					State generatedState = new State(previousState);
-					generatedState.removeEntity(entityID1);
-					generatedState.removeEntity(entityID2);
-					int beginIndex = Math.min(previousStatesEntity1.getBeginTokenIndex(),
-							previousStatesEntity2.getBeginTokenIndex());
-					int endIndex = Math.max(previousStatesEntity1.getEndTokenIndex(),
-							previousStatesEntity2.getEndTokenIndex());
-					HashMultimap<ArgumentRole, VariableID> arguments = HashMultimap
-							.create(previousStatesEntity1.getReadOnlyArguments());
-
-					EntityAnnotation mergedEntity = new EntityAnnotation(generatedState,
-							previousStatesEntity1.getType(), arguments, beginIndex, endIndex);
-					generatedState.addEntity(mergedEntity);
-					generatedStates.add(generatedState);
+					proposals.add(Proposals.mergeEntities(entityID1, entityID2));
 					mergedVariablePairs.add(new MergedVariablePair(entityID1, entityID2));
 				}
 			}
 		}
-		return generatedStates;
+		return proposals;
 	}
 
 	/**
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -16,7 +17,7 @@ import utility.VariableID;
 import variables.EntityAnnotation;
 import variables.State;
 
-public class ExhaustiveEntityExplorer implements Explorer<State> {
+public class ExhaustiveEntityExplorer implements Explorer<State>, ProposalExplorer, StreamingExplorer {
 
 	private static Logger log = LogManager.getFormatterLogger(ExhaustiveEntityExplorer.class.getName());
 	private AnnotationConfig corpusConfig;
@@ -26,19 +27,28 @@ public class ExhaustiveEntityExplorer implements Explorer<State> {
 	}
 
 	public List<State> getNextStates(State previousState) {
-		List<State> generatedStates = new ArrayList<>();
+		return Proposals.toStates(previousState, getProposals(previousState));
+	}
+
+	@Override
+	public Stream<State> streamNextStates(State previousState) {
+		return Proposals.streamStates(previousState, getProposals(previousState));
+	}
+
+	@Override
+	public List<Proposal> getProposals(State previousState) {
+		List<Proposal> proposals = new ArrayList<>();
 		// Add new entities to empty tokens
-		generatedStates.addAll(generateStatesForTokens(previousState));
+		proposals.addAll(generateProposalsForTokens(previousState));
 		// Modify existing entities
-		generatedStates.addAll(generateStatesForEntities(previousState));
+		proposals.addAll(generateProposalsForEntities(previousState));
 		// add an unchanged state
-		State generatedState = new State(previousState);
-		generatedStates.add(generatedState);
-		return generatedStates;
+		proposals.add(Proposals.doNothing());
+		return proposals;
 	}
 
-	private List<State> generateStatesForEntities(State previousState) {
-		List<State> generatedStates = new ArrayList<State>();
+	private List<Proposal> generateProposalsForEntities(State previousState) {
+		List<Proposal> proposals = new ArrayList<>();
 		Set<VariableID> previousStatesEntityIDs = previousState.getEditableEntityIDs();
 		for (VariableID entityID : previousStatesEntityIDs) {
 			EntityAnnotation previousStatesEntity = previousState.getEntity(entityID);
@@ -47,36 +57,27 @@ public class ExhaustiveEntityExplorer implements Explorer<State> {
 			entityTypeDefinitions.remove(previousStatesEntity.getType());
 			// change Type of every entity to every possible type
 			for (EntityTypeDefinition entityTypeDefinition : entityTypeDefinitions) {
-				State generatedState = new State(previousState);
-				EntityAnnotation entity = generatedState.getEntity(entityID);
-				entity.setType(entityTypeDefinition.getInstance());
-				generatedStates.add(generatedState);
+				proposals.add(Proposals.changeType(entityID, entityTypeDefinition.getInstance()));
 			}
 			// Create on state with that particular entity removed
-			State generatedState = new State(previousState);
-			EntityAnnotation entity = generatedState.getEntity(entityID);
-			generatedState.removeEntity(entity);
-			generatedStates.add(generatedState);
+			proposals.add(Proposals.removeEntity(entityID));
 		}
-		return generatedStates;
+		return proposals;
 	}
 
-	private List<State> generateStatesForTokens(State previousState) {
-		List<State> generatedStates = new ArrayList<State>();
+	private List<Proposal> generateProposalsForTokens(State previousState) {
+		List<Proposal> proposals = new ArrayList<>();
 		List<Token> tokens = previousState.getDocument().getTokens();
 		for (Token token : tokens) {
 			if (!previousState.tokenHasAnnotation(token)) {
 				// Assign new entity to empty token
 				Collection<EntityTypeDefinition> entityTypeDefinitions = corpusConfig.getEntityTypeDefinitions();
 				for (EntityTypeDefinition entityTypeDefinition : entityTypeDefinitions) {
-					State generatedState = new State(previousState);
-					EntityAnnotation tokenAnnotation = new EntityAnnotation(generatedState,
-							entityTypeDefinition.getInstance(), token.getIndex(), token.getIndex() + 1);
-					generatedState.addEntity(tokenAnnotation);
-					generatedStates.add(generatedState);
+					proposals.add(Proposals.addEntity(entityTypeDefinition.getInstance(), token.getIndex(),
+							token.getIndex() + 1));
 				}
 			}
 		}
-		return generatedStates;
+		return proposals;
 	}
 }
@@ -3,6 +3,7 @@ package sampler;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.stream.Stream;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -15,7 +16,7 @@ import variables.ArgumentRole;
 import variables.EntityAnnotation;
 import variables.State;
 
-public class ExhaustiveRelationExplorer implements Explorer<State> {
+public class ExhaustiveRelationExplorer implements Explorer<State>, ProposalExplorer, StreamingExplorer {
 
 	private static Logger log = LogManager.getFormatterLogger(ExhaustiveRelationExplorer.class.getName());
 
@@ -26,21 +27,31 @@ public class ExhaustiveRelationExplorer implements Explorer<State> {
 	}
 
 	public List<State> getNextStates(State previousState) {
-		List<State> generatedStates = new ArrayList<State>();
+		return Proposals.toStates(previousState, getProposals(previousState));
+	}
+
+	@Override
+	public Stream<State> streamNextStates(State previousState) {
+		return Proposals.streamStates(previousState, getProposals(previousState));
+	}
+
+	@Override
+	public List<Proposal> getProposals(State previousState) {
+		List<Proposal> proposals = new ArrayList<>();
 		for (EntityAnnotation entity : previousState.getEditableEntities()) {
-			generatedStates.addAll(addArguments(previousState, entity));
-			generatedStates.addAll(removeArguments(previousState, entity));
-			generatedStates.addAll(changeArgumentRoles(previousState, entity));
-			generatedStates.addAll(changeArgumentEntities(previousState, entity));
+			proposals.addAll(addArguments(previousState, entity));
+			proposals.addAll(removeArguments(previousState, entity));
+			proposals.addAll(changeArgumentRoles(previousState, entity));
+			proposals.addAll(changeArgumentEntities(previousState, entity));
 
 		}
-		generatedStates.add(new State(previousState));
-		return generatedStates;
+		proposals.add(Proposals.doNothing());
+		return proposals;
 
 	}
 
-	private List<State> addArguments(State previousState, EntityAnnotation previousStatesEntity) {
-		List<State> generatedStates = new ArrayList<State>();
+	private List<Proposal> addArguments(State previousState, EntityAnnotation previousStatesEntity) {
+		List<Proposal> proposals = new ArrayList<>();
 		List<EntityAnnotation> entities = new ArrayList<>(previousState.getEntities());
 		entities.remove(previousStatesEntity);
 		if (!entities.isEmpty()) {
@@ -55,11 +66,9 @@ public class ExhaustiveRelationExplorer implements Explorer<State> {
 			if (!unassignedRoles.isEmpty()) {
 				for (EntityAnnotation argumentEntity : entities) {
 					for (ArgumentRole argumentRole : unassignedRoles) {
-						State generatedState = new State(previousState);
-						EntityAnnotation entity = generatedState.getEntity(previousStatesEntity.getID());
-						entity.addArgument(argumentRole, argumentEntity.getID());
-						log.debug("\t%s + %s:%s", entity.getID(), argumentRole, argumentEntity.getID());
-						generatedStates.add(generatedState);
+						proposals.add(
+								Proposals.addArgument(previousStatesEntity.getID(), argumentRole, argumentEntity.getID()));
+						log.debug("\t%s + %s:%s", previousStatesEntity.getID(), argumentRole, argumentEntity.getID());
 					}
 				}
 			} else {
@@ -70,22 +79,20 @@ public class ExhaustiveRelationExplorer implements Explorer<State> {
 			log.debug("\t%s (%s): No entities for argument existing", previousStatesEntity.getID(),
 					previousStatesEntity.getType().getName());
 		}
-		return generatedStates;
+		return proposals;
 	}
 
-	private List<State> removeArguments(State previousState, EntityAnnotation previousStatesEntity) {
-		List<State> generatedStates = new ArrayList<State>();
+	private List<Proposal> removeArguments(State previousState, EntityAnnotation previousStatesEntity) {
+		List<Proposal> proposals = new ArrayList<>();
 		for (Entry<ArgumentRole, VariableID> argumentEntry : previousStatesEntity.getReadOnlyArguments().entries()) {
-			State generatedState = new State(previousState);
-			EntityAnnotation entity = generatedState.getEntity(previousStatesEntity.getID());
-			entity.removeArgument(argumentEntry.getKey(), argumentEntry.getValue());
-			generatedStates.add(generatedState);
+			proposals.add(Proposals.removeArgument(previousStatesEntity.getID(), argumentEntry.getKey(),
+					argumentEntry.getValue()));
 		}
-		return generatedStates;
+		return proposals;
 	}
 
-	private List<State> changeArgumentRoles(State previousState, EntityAnnotation previousStatesEntity) {
-		List<State> generatedStates = new ArrayList<State>();
+	private List<Proposal> changeArgumentRoles(State previousState, EntityAnnotation previousStatesEntity) {
+		List<Proposal> proposals = new ArrayList<>();
 		EntityTypeDefinition type = corpusConfig.getEntityTypeDefinition(previousStatesEntity.getType());
 
 		for (Entry<ArgumentRole, VariableID> argumentToChange : previousStatesEntity.getReadOnlyArguments().entries()) {
@@ -95,18 +102,15 @@ public class ExhaustiveRelationExplorer implements Explorer<State> {
 			possibleNewRoles.remove(argumentToChange.getKey());
 
 			for (ArgumentRole newRole : possibleNewRoles) {
-				State generatedState = new State(previousState);
-				EntityAnnotation entity = generatedState.getEntity(previousStatesEntity.getID());
-				entity.removeArgument(argumentToChange.getKey(), argumentToChange.getValue());
-				entity.addArgument(newRole, argumentToChange.getValue());
-				generatedStates.add(generatedState);
+				proposals.add(Proposals.changeArgumentRole(previousStatesEntity.getID(), argumentToChange.getKey(),
+						argumentToChange.getValue(), newRole));
 			}
 		}
-		return generatedStates;
+		return proposals;
 	}
 
-	private List<State> changeArgumentEntities(State previousState, EntityAnnotation previousStatesEntity) {
-		List<State> generatedStates = new ArrayList<State>();
+	private List<Proposal> changeArgumentEntities(State previousState, EntityAnnotation previousStatesEntity) {
+		List<Proposal> proposals = new ArrayList<>();
 		for (Entry<ArgumentRole, VariableID> argumentToChange : previousStatesEntity.getReadOnlyArguments().entries()) {
 			List<VariableID> entityIDs = new ArrayList<VariableID>(previousState.getEntityIDs());
 			// remove parent entity from list of possible arguments
@@ -115,13 +119,11 @@ public class ExhaustiveRelationExplorer implements Explorer<State> {
 			entityIDs.remove(argumentToChange.getValue());
 
 			for (VariableID newArgumentID : entityIDs) {
-				State generatedState = new State(previousState);
-				EntityAnnotation entity = generatedState.getEntity(previousStatesEntity.getID());
-				entity.addArgument(argumentToChange.getKey(), newArgumentID);
-				generatedStates.add(generatedState);
+				proposals.add(Proposals.changeArgumentEntity(previousStatesEntity.getID(), argumentToChange.getKey(),
+						argumentToChange.getValue(), newArgumentID));
 			}
 		}
-		return generatedStates;
+		return proposals;
 	}
 
 }
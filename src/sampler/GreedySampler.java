@@ -0,0 +1,208 @@
+package sampler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import learning.Learner;
+import learning.ObjectiveFunction;
+import learning.Scorer;
+import sampling.Sampler;
+import variables.State;
+
+/**
+ * Base class for samplers that select a single successor state for each of
+ * their explorers in each sampling step. During training, the successor with
+ * the highest objective score is selected, during testing the one with the
+ * highest model score. By default, the selected state replaces the current
+ * state if it improves the respective score. Subclasses define how the
+ * successors of an explorer are generated and selected.
+ *
+ * @param <ExplorerT>
+ */
+public abstract class GreedySampler<ExplorerT> implements Sampler<State, State> {
+
+	protected Scorer<State> scorer;
+	protected ObjectiveFunction<State, State> objective;
+	protected List<ExplorerT> explorers;
+	protected int numberOfSteps;
+	protected StoppingCriterion stoppingCriterion;
+	protected ChainStatistics chainStatistics = new ChainStatistics();
+	/**
+	 * The last state of the chain that was generated most recently.
+	 */
+	private State lastState;
+	private boolean lastChainConverged;
+
+	public GreedySampler(Scorer<State> scorer, ObjectiveFunction<State, State> objective, List<ExplorerT> explorers,
+			int numberOfSteps) {
+		this.scorer = scorer;
+		this.objective = objective;
+		this.explorers = explorers;
+		this.numberOfSteps = numberOfSteps;
+	}
+
+	@Override
+	public List<State> generateChain(State initialState, State goldResult, Learner<State> learner) {
+		return generateChain(initialState, goldResult, learner, true);
+	}
+
+	@Override
+	public List<State> generateChain(State initialState) {
+		return generateChain(initialState, null, null, false);
+	}
+
+	protected List<State> generateChain(State initialState, State goldResult, Learner<State> learner,
+			boolean training) {
+		List<State> generatedChain = new ArrayList<>();
+		State currentState = initialState;
+		score(currentState, goldResult, training);
+		if (initialState != lastState) {
+			startChain();
+		}
+		boolean converged = false;
+		for (int step = 0; step < numberOfSteps && !converged; step++) {
+			for (ExplorerT explorer : explorers) {
+				State candidateState = selectNextState(explorer, currentState, goldResult, training);
+				if (candidateState == null) {
+					continue;
+				}
+				if (training) {
+					learner.update(currentState, candidateState);
+				}
+				if (accept(candidateState, currentState, training)) {
+					currentState = candidateState;
+				}
+			}
+			generatedChain.add(currentState);
+			converged = isChainFinished(step, currentState)
+					|| (stoppingCriterion != null && stoppingCriterion.isConverged(generatedChain, training));
+		}
+		chainStatistics.record(initialState, generatedChain.size(), converged);
+		lastState = generatedChain.isEmpty() ? initialState : generatedChain.get(generatedChain.size() - 1);
+		lastChainConverged = converged;
+		return generatedChain;
+	}
+
+	public StoppingCriterion getStoppingCriterion() {
+		return stoppingCriterion;
+	}
+
+	/**
+	 * Sets the criterion that ends a chain before the maximum number of steps
+	 * is reached. If no criterion is set, each chain runs for the maximum
+	 * number of steps.
+	 *
+	 * @param stoppingCriterion
+	 */
+	public void setStoppingCriterion(StoppingCriterion stoppingCriterion) {
+		this.stoppingCriterion = stoppingCriterion;
+	}
+
+	public ChainStatistics getChainStatistics() {
+		return chainStatistics;
+	}
+
+	/**
+	 * Returns true if the most recent call of generateChain() ended because
+	 * isChainFinished() or the stopping criterion said so, rather than after
+	 * the maximum number of steps. Samplers that drive this sampler one step
+	 * at a time use this to end their own chain, e.g. when an AnnealingSampler
+	 * stops accepting proposals.
+	 * 
+	 * @return
+	 */
+	public boolean isChainConverged() {
+		return lastChainConverged;
+	}
+
+	/**
+	 * Ends the current chain, so that the next call of generateChain() starts
+	 * a new chain even if its initial state is the last state of the current
+	 * chain.
+	 */
+	public void restartChain() {
+		lastState = null;
+	}
+
+	/**
+	 * Called at the beginning of each chain. Samplers that keep track of the
+	 * progress of a chain reset their bookkeeping here. Note that such samplers
+	 * can not generate several chains concurrently.
+	 * 
+	 * A call of generateChain() whose initial state is the last state that the
+	 * previous call returned continues the previous chain and does not call
+	 * this method. Thus, the progress of a chain is kept when the sampler is
+	 * driven one step at a time, e.g. by EarlyStoppingSampler, AnytimeSampler
+	 * or MultiChainSampler.
+	 */
+	protected void startChain() {
+	}
+
+	/**
+	 * Called after each sampling step. If this method returns true, the chain
+	 * ends before the maximum number of steps is reached. The given step is
+	 * counted from the start of the current call of generateChain().
+	 *
+	 * @param step
+	 * @param currentState
+	 * @return
+	 */
+	protected boolean isChainFinished(int step, State currentState) {
+		return false;
+	}
+
+	/**
+	 * Generates the successors of the current state with the given explorer and
+	 * returns the best of them, already scored. Returns null if the explorer
+	 * does not generate any successor.
+	 *
+	 * @param explorer
+	 * @param currentState
+	 * @param goldResult
+	 * @param training
+	 * @return
+	 */
+	protected abstract State selectNextState(ExplorerT explorer, State currentState, State goldResult,
+			boolean training);
+
+	/**
+	 * Decides whether the candidate state replaces the current state. By
+	 * default, only improvements are accepted.
+	 *
+	 * @param candidateState
+	 * @param currentState
+	 * @param training
+	 * @return
+	 */
+	protected boolean accept(State candidateState, State currentState, boolean training) {
+		return getScore(candidateState, training) > getScore(currentState, training);
+	}
+
+	/**
+	 * Computes the model score and, during training, the objective score of
+	 * the given state.
+	 *
+	 * @param state
+	 * @param goldResult
+	 * @param training
+	 */
+	protected void score(State state, State goldResult, boolean training) {
+		scorer.score(Arrays.asList(state), false);
+		if (training) {
+			objective.score(state, goldResult);
+		}
+	}
+
+	/**
+	 * The score by which states are compared: the objective score during
+	 * training and the model score otherwise.
+	 *
+	 * @param state
+	 * @param training
+	 * @return
+	 */
+	protected double getScore(State state, boolean training) {
+		return training ? state.getObjectiveScore() : state.getModelScore();
+	}
+}
@@ -0,0 +1,254 @@
+package sampler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import corpus.Document;
+import learning.Learner;
+import sampling.Initializer;
+import sampling.Sampler;
+import variables.State;
+
+/**
+ * Runs several independent chains for each document in parallel and returns
+ * the chain whose final state has the highest model score. Each chain has its
+ * own sampler that performs a single sampling step per call (e.g. a
+ * DefaultSampler with numberOfSteps = 1 or a StochasticSampler with its own
+ * seed) and, optionally, its own initializer (e.g. a DefaultInitializer with
+ * and one without prior knowledge). Chains without an initializer start from
+ * a copy of the given initial state.
+ * 
+ * Since the chains of several documents may be generated concurrently (e.g.
+ * by the ParallelTester), the step samplers are created anew for each call of
+ * generateChain() by the factory of the respective chain. The factories are
+ * called one at a time, so they may derive the samplers from a shared
+ * prototype, e.g. with StochasticSampler::split or AnnealingSampler::split.
+ * Step samplers that keep track of the progress of their chain, like the
+ * AnnealingSampler, continue their chain across the steps (see
+ * GreedySampler.startChain()), and a chain ends as soon as its GreedySampler
+ * reports that its own chain converged.
+ * 
+ * A chain ends when its stopping criterion is met or after the maximum number
+ * of steps. As soon as a converged chain is better than the current states of
+ * all other chains by at least the given margin, all chains are stopped.
+ * 
+ * Chains can only run in parallel during testing. During training, only the
+ * first chain is used, since the learner must not be updated concurrently.
+ */
+public class MultiChainSampler implements Sampler<State, State> {
+
+	private static Logger log = LogManager.getFormatterLogger(MultiChainSampler.class.getName());
+
+	private List<Supplier<Sampler<State, State>>> stepSamplerFactories = new ArrayList<>();
+	private List<Initializer<Document<State>, State>> initializers = new ArrayList<>();
+	private int numberOfSteps;
+	private StoppingCriterion stoppingCriterion;
+	private double margin;
+	private ForkJoinPool pool;
+
+	private ChainStatistics chainStatistics = new ChainStatistics();
+	private AtomicLong numberOfStoppedRuns = new AtomicLong();
+
+	/**
+	 * 
+	 * @param numberOfSteps
+	 *            the maximum number of steps per chain
+	 * @param stoppingCriterion
+	 *            decides when a single chain converged
+	 * @param margin
+	 *            the score difference by which a converged chain has to lead
+	 *            in order to stop all other chains
+	 * @param pool
+	 */
+	public MultiChainSampler(int numberOfSteps, StoppingCriterion stoppingCriterion, double margin,
+			ForkJoinPool pool) {
+		this.numberOfSteps = numberOfSteps;
+		this.stoppingCriterion = stoppingCriterion;
+		this.margin = margin;
+		this.pool = pool;
+	}
+
+	/**
+	 * Adds a chain that starts from a copy of the initial state.
+	 * 
+	 * @param stepSamplerFactory
+	 *            creates a sampler that performs exactly one sampling step per
+	 *            chain
+	 */
+	public void addChain(Supplier<Sampler<State, State>> stepSamplerFactory) {
+		addChain(stepSamplerFactory, null);
+	}
+
+	/**
+	 * Adds a chain that starts from the state that the given initializer
+	 * creates for the document of the initial state.
+	 * 
+	 * @param stepSamplerFactory
+	 *            creates a sampler that performs exactly one sampling step per
+	 *            chain
+	 * @param initializer
+	 */
+	public void addChain(Supplier<Sampler<State, State>> stepSamplerFactory,
+			Initializer<Document<State>, State> initializer) {
+		stepSamplerFactories.add(stepSamplerFactory);
+		initializers.add(initializer);
+	}
+
+	@Override
+	public List<State> generateChain(State initialState, State goldResult, Learner<State> learner) {
+		if (stepSamplerFactories.isEmpty()) {
+			throw new IllegalStateException("No chains added to the MultiChainSampler.");
+		}
+		return new Chain(0, createStepSampler(0), getInitialState(0, initialState), null, null).run(goldResult,
+				learner, true);
+	}
+
+	@Override
+	public List<State> generateChain(State initialState) {
+		if (stepSamplerFactories.isEmpty()) {
+			throw new IllegalStateException("No chains added to the MultiChainSampler.");
+		}
+		int numberOfChains = stepSamplerFactories.size();
+		double[] currentScores = new double[numberOfChains];
+		// no chain can stop the others before all chains made their first step
+		Arrays.fill(currentScores, Double.POSITIVE_INFINITY);
+		AtomicBoolean stop = new AtomicBoolean(false);
+		List<ForkJoinTask<List<State>>> tasks = new ArrayList<>();
+		for (int i = 0; i < numberOfChains; i++) {
+			Chain chain = new Chain(i, createStepSampler(i), getInitialState(i, initialState), currentScores, stop);
+			tasks.add(pool.submit(() -> chain.run(null, null, false)));
+		}
+		List<State> bestChain = null;
+		int bestChainIndex = -1;
+		for (int i = 0; i < numberOfChains; i++) {
+			List<State> chain = tasks.get(i).join();
+			if (!chain.isEmpty() && (bestChain == null || getLastState(chain).getModelScore() > getLastState(bestChain)
+					.getModelScore())) {
+				bestChain = chain;
+				bestChainIndex = i;
+			}
+		}
+		if (stop.get()) {
+			numberOfStoppedRuns.incrementAndGet();
+		}
+		log.debug("Selected chain %s out of %s chains", bestChainIndex, numberOfChains);
+		return bestChain != null ? bestChain : new ArrayList<>();
+	}
+
+	/**
+	 * Creates a new step sampler for the given chain. The factories are not
+	 * required to be thread-safe.
+	 * 
+	 * @param chainIndex
+	 * @return
+	 */
+	private Sampler<State, State> createStepSampler(int chainIndex) {
+		synchronized (stepSamplerFactories) {
+			return stepSamplerFactories.get(chainIndex).get();
+		}
+	}
+
+	private State getInitialState(int chainIndex, State initialState) {
+		Initializer<Document<State>, State> initializer = initializers.get(chainIndex);
+		if (initializer != null) {
+			return initializer.getInitialState(initialState.getDocument());
+		}
+		return new State(initialState);
+	}
+
+	private static State getLastState(List<State> chain) {
+		return chain.get(chain.size() - 1);
+	}
+
+	/**
+	 * The number of runs in which a converged chain stopped all other chains.
+	 * 
+	 * @return
+	 */
+	public long getNumberOfStoppedRuns() {
+		return numberOfStoppedRuns.get();
+	}
+
+	public ChainStatistics getChainStatistics() {
+		return chainStatistics;
+	}
+
+	public int getNumberOfChains() {
+		return stepSamplerFactories.size();
+	}
+
+	private class Chain {
+		private int index;
+		private Sampler<State, State> stepSampler;
+		private State initialState;
+		private double[] currentScores;
+		private AtomicBoolean stop;
+
+		public Chain(int index, Sampler<State, State> stepSampler, State initialState, double[] currentScores,
+				AtomicBoolean stop) {
+			this.index = index;
+			this.stepSampler = stepSampler;
+			this.initialState = initialState;
+			this.currentScores = currentScores;
+			this.stop = stop;
+		}
+
+		public List<State> run(State goldResult, Learner<State> learner, boolean training) {
+			List<State> generatedChain = new ArrayList<>();
+			State currentState = initialState;
+			boolean converged = false;
+			for (int step = 0; step < numberOfSteps && !converged; step++) {
+				if (stop != null && stop.get()) {
+					break;
+				}
+				List<State> stepChain = training ? stepSampler.generateChain(currentState, goldResult, learner)
+						: stepSampler.generateChain(currentState);
+				if (stepChain.isEmpty()) {
+					log.warn("Sampler %s did not generate any state for state %s", stepSampler, currentState.getID());
+					break;
+				}
+				generatedChain.addAll(stepChain);
+				currentState = getLastState(stepChain);
+				converged = stoppingCriterion.isConverged(generatedChain, training)
+						|| (stepSampler instanceof GreedySampler && ((GreedySampler<?>) stepSampler).isChainConverged());
+				if (stop != null) {
+					publishScore(currentState.getModelScore(), converged);
+				}
+			}
+			chainStatistics.record(initialState, generatedChain.size(), converged);
+			return generatedChain;
+		}
+
+		/**
+		 * Makes the score of this chain visible to the other chains and stops
+		 * all chains if this chain converged with a sufficient lead.
+		 * 
+		 * @param score
+		 * @param converged
+		 */
+		private void publishScore(double score, boolean converged) {
+			synchronized (currentScores) {
+				currentScores[index] = score;
+				if (!converged) {
+					return;
+				}
+				for (int i = 0; i < currentScores.length; i++) {
+					if (i != index && score < currentScores[i] + margin) {
+						return;
+					}
+				}
+			}
+			log.debug("Chain %s converged with a lead of at least %s. Stop all chains.", index, margin);
+			stop.set(true);
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package sampler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import sampling.Explorer;
+import variables.State;
+
+/**
+ * Joins the next states of several explorers, like the JoinExplorer, but
+ * generates them in parallel on a ForkJoinPool. For explorers that implement
+ * ProposalExplorer, the proposals are collected first (which is cheap) and the
+ * expensive part, creating and changing a copy of the state for each
+ * proposal, is split into ranges of proposals across the pool. All other
+ * explorers run as separate tasks. The generated states always have the same
+ * order as with a sequential JoinExplorer, regardless of the number of
+ * threads.
+ */
+public class ParallelJoinExplorer implements Explorer<State>, StreamingExplorer {
+
+	private List<Explorer<State>> explorers;
+	private ForkJoinPool pool;
+
+	/**
+	 * Creates a new explorer that runs on the given pool. The pool is owned by
+	 * the caller, which is responsible for shutting it down.
+	 * 
+	 * @param explorers
+	 * @param pool
+	 */
+	public ParallelJoinExplorer(List<Explorer<State>> explorers, ForkJoinPool pool) {
+		this.explorers = explorers;
+		this.pool = pool;
+	}
+
+	@Override
+	public List<State> getNextStates(State previousState) {
+		return pool.submit(() -> streamNextStates(previousState).parallel().collect(Collectors.toList())).join();
+	}
+
+	/**
+	 * Returns the joined states of all explorers as a lazy stream. The stream
+	 * can be split efficiently, so that a parallel consumer (e.g. a
+	 * StreamingSampler with a pool) creates and scores the states in
+	 * parallel.
+	 */
+	@Override
+	public Stream<State> streamNextStates(State previousState) {
+		List<ForkJoinTask<List<State>>> explorerTasks = new ArrayList<>();
+		for (Explorer<State> explorer : explorers) {
+			if (explorer instanceof ProposalExplorer) {
+				explorerTasks.add(null);
+			} else {
+				explorerTasks.add(pool.submit(() -> explorer.getNextStates(previousState)));
+			}
+		}
+		Stream<State> nextStates = Stream.empty();
+		for (int i = 0; i < explorers.size(); i++) {
+			Explorer<State> explorer = explorers.get(i);
+			Stream<State> explorerStates;
+			if (explorer instanceof ProposalExplorer) {
+				List<Proposal> proposals = ((ProposalExplorer) explorer).getProposals(previousState);
+				explorerStates = Proposals.streamStates(previousState, proposals);
+			} else {
+				explorerStates = explorerTasks.get(i).join().stream();
+			}
+			nextStates = Stream.concat(nextStates, explorerStates);
+		}
+		return nextStates;
+	}
+
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+}
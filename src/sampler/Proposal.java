@@ -0,0 +1,31 @@
+package sampler;
+
+import java.io.Serializable;
+
+import changes.StateChange;
+import variables.State;
+
+/**
+ * A Proposal describes a single change to a state, e.g. "set begin of G3 to 4"
+ * or "add Theme:T2 to E1", without creating the changed state itself. A
+ * proposal can be applied to any state that contains the referenced entities.
+ * Together with the undo log of the State, proposals can be applied to a single
+ * working state, scored there and reverted again.
+ */
+public interface Proposal extends Serializable {
+
+	/**
+	 * The kind of change that this proposal describes.
+	 * 
+	 * @return
+	 */
+	public StateChange getStateChange();
+
+	/**
+	 * Applies this change to the given state.
+	 * 
+	 * @param state
+	 */
+	public void applyTo(State state);
+
+}
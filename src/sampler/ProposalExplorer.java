@@ -0,0 +1,16 @@
+package sampler;
+
+import java.util.List;
+
+import variables.State;
+
+/**
+ * Explorers implementing this interface can describe their next states as
+ * lightweight proposals instead of materializing a complete State for each of
+ * them.
+ */
+public interface ProposalExplorer {
+
+	public List<Proposal> getProposals(State previousState);
+
+}
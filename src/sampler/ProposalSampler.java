@@ -0,0 +1,74 @@
+package sampler;
+
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import learning.ObjectiveFunction;
+import learning.Scorer;
+import variables.State;
+
+/**
+ * This sampler evaluates the proposals of its explorers in place. For each
+ * sampling step, a single working state is created from the current state.
+ * Each proposal is applied to this working state, scored and reverted again
+ * via the undo log of the state. Only the selected proposal is turned into a
+ * new State.
+ */
+public class ProposalSampler extends GreedySampler<ProposalExplorer> {
+
+	private static Logger log = LogManager.getFormatterLogger(ProposalSampler.class.getName());
+
+	public ProposalSampler(Scorer<State> scorer, ObjectiveFunction<State, State> objective,
+			List<ProposalExplorer> explorers, int numberOfSteps) {
+		super(scorer, objective, explorers, numberOfSteps);
+	}
+
+	@Override
+	protected State selectNextState(ProposalExplorer explorer, State currentState, State goldResult,
+			boolean training) {
+		List<Proposal> proposals = explorer.getProposals(currentState);
+		Proposal bestProposal = selectProposal(currentState, proposals, goldResult, training);
+		if (bestProposal == null) {
+			return null;
+		}
+		log.debug("Selected proposal %s out of %s proposals", bestProposal, proposals.size());
+		State candidateState = new State(currentState, true);
+		bestProposal.applyTo(candidateState);
+		score(candidateState, goldResult, training);
+		return candidateState;
+	}
+
+	/**
+	 * Applies each proposal to a working copy of the current state, scores it
+	 * and reverts it again. Returns the proposal with the highest objective
+	 * score (training) or model score (testing).
+	 *
+	 * @param currentState
+	 * @param proposals
+	 * @param goldResult
+	 * @param training
+	 * @return
+	 */
+	private Proposal selectProposal(State currentState, List<Proposal> proposals, State goldResult,
+			boolean training) {
+		State workingState = new State(currentState, true);
+		workingState.startRecordingChanges();
+		Proposal bestProposal = null;
+		double bestScore = Double.NEGATIVE_INFINITY;
+		for (Proposal proposal : proposals) {
+			proposal.applyTo(workingState);
+			score(workingState, goldResult, training);
+			double score = getScore(workingState, training);
+			if (score > bestScore) {
+				bestScore = score;
+				bestProposal = proposal;
+			}
+			workingState.undoRecordedChanges();
+		}
+		workingState.stopRecordingChanges();
+		return bestProposal;
+	}
+
+}
@@ -0,0 +1,460 @@
+package sampler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.collect.HashMultimap;
+
+import changes.StateChange;
+import utility.VariableID;
+import variables.ArgumentRole;
+import variables.EntityAnnotation;
+import variables.EntityType;
+import variables.State;
+
+/**
+ * Factory methods for all proposals that are generated by the exhaustive
+ * explorers.
+ */
+public class Proposals {
+
+	private static Logger log = LogManager.getFormatterLogger(Proposals.class.getName());
+
+	private Proposals() {
+	}
+
+	/**
+	 * Creates a copy-on-write copy of the previous state for each of the
+	 * proposals and applies the proposal to it. If the deadline of the
+	 * previous state passes, the remaining proposals are skipped, but at least
+	 * one state is created and the proposals that do nothing are always kept,
+	 * so that the sampler can still stay in the previous state.
+	 *
+	 * @param previousState
+	 * @param proposals
+	 * @return
+	 */
+	public static List<State> toStates(State previousState, List<Proposal> proposals) {
+		List<State> generatedStates = new ArrayList<>(proposals.size());
+		int skippedProposals = 0;
+		for (Proposal proposal : proposals) {
+			if (!generatedStates.isEmpty() && !isNoOp(proposal) && previousState.isPastDeadline()) {
+				skippedProposals++;
+				continue;
+			}
+			State generatedState = new State(previousState, true);
+			proposal.applyTo(generatedState);
+			generatedStates.add(generatedState);
+		}
+		if (skippedProposals > 0) {
+			log.debug("Deadline passed. Skipped %s of %s proposals", skippedProposals, proposals.size());
+		}
+		return generatedStates;
+	}
+
+	/**
+	 * Lazily applies each proposal to its own copy-on-write copy of the
+	 * previous state. A state is only created when the stream reaches the
+	 * respective proposal. Once the deadline of the previous state passed, the
+	 * remaining proposals are skipped, but at least one state is created and
+	 * the proposals that do nothing are always kept.
+	 *
+	 * @param previousState
+	 * @param proposals
+	 * @return
+	 */
+	public static Stream<State> streamStates(State previousState, List<Proposal> proposals) {
+		if (!previousState.hasDeadline()) {
+			return proposals.stream().map(proposal -> {
+				State generatedState = new State(previousState, true);
+				proposal.applyTo(generatedState);
+				return generatedState;
+			});
+		}
+		return IntStream.range(0, proposals.size())
+				.filter(i -> i == 0 || isNoOp(proposals.get(i)) || !previousState.isPastDeadline())
+				.mapToObj(i -> {
+					State generatedState = new State(previousState, true);
+					proposals.get(i).applyTo(generatedState);
+					return generatedState;
+				});
+	}
+
+	public static Proposal doNothing() {
+		return DoNothing.INSTANCE;
+	}
+
+	private static boolean isNoOp(Proposal proposal) {
+		return proposal.getStateChange() == StateChange.DO_NOTHING;
+	}
+
+	public static Proposal addEntity(EntityType type, int beginTokenIndex, int endTokenIndex) {
+		return new AddEntity(type, beginTokenIndex, endTokenIndex);
+	}
+
+	public static Proposal removeEntity(VariableID entityID) {
+		return new RemoveEntity(entityID);
+	}
+
+	public static Proposal changeType(VariableID entityID, EntityType type) {
+		return new ChangeType(entityID, type);
+	}
+
+	public static Proposal changeBeginTokenIndex(VariableID entityID, int beginTokenIndex) {
+		return new ChangeBoundary(entityID, beginTokenIndex, true);
+	}
+
+	public static Proposal changeEndTokenIndex(VariableID entityID, int endTokenIndex) {
+		return new ChangeBoundary(entityID, endTokenIndex, false);
+	}
+
+	/**
+	 * Replaces both entities with a single entity that spans both entities and
+	 * has the type and the arguments of the first entity.
+	 *
+	 * @param entityID1
+	 * @param entityID2
+	 * @return
+	 */
+	public static Proposal mergeEntities(VariableID entityID1, VariableID entityID2) {
+		return new MergeEntities(entityID1, entityID2);
+	}
+
+	public static Proposal addArgument(VariableID entityID, ArgumentRole role, VariableID argumentID) {
+		return new AddArgument(entityID, role, argumentID);
+	}
+
+	public static Proposal removeArgument(VariableID entityID, ArgumentRole role, VariableID argumentID) {
+		return new RemoveArgument(entityID, role, argumentID);
+	}
+
+	public static Proposal changeArgumentRole(VariableID entityID, ArgumentRole role, VariableID argumentID,
+			ArgumentRole newRole) {
+		return new ChangeArgumentRole(entityID, role, argumentID, newRole);
+	}
+
+	/**
+	 * Adds the new argument entity with the role of the given argument.
+	 *
+	 * @param entityID
+	 * @param role
+	 * @param argumentID
+	 * @param newArgumentID
+	 * @return
+	 */
+	public static Proposal changeArgumentEntity(VariableID entityID, ArgumentRole role, VariableID argumentID,
+			VariableID newArgumentID) {
+		return new ChangeArgumentEntity(entityID, role, argumentID, newArgumentID);
+	}
+
+	private static EntityAnnotation getMutableEntity(State state, VariableID entityID) {
+		EntityAnnotation entity = state.getMutableEntity(entityID);
+		if (entity == null) {
+			log.warn("Cannot apply proposal to state %s. Entity %s not found!", state.getID(), entityID);
+		}
+		return entity;
+	}
+
+	private static class DoNothing implements Proposal {
+		private static final DoNothing INSTANCE = new DoNothing();
+
+		@Override
+		public StateChange getStateChange() {
+			return StateChange.DO_NOTHING;
+		}
+
+		@Override
+		public void applyTo(State state) {
+		}
+
+		@Override
+		public String toString() {
+			return "DoNothing";
+		}
+	}
+
+	private static class AddEntity implements Proposal {
+		private EntityType type;
+		private int beginTokenIndex;
+		private int endTokenIndex;
+
+		public AddEntity(EntityType type, int beginTokenIndex, int endTokenIndex) {
+			this.type = type;
+			this.beginTokenIndex = beginTokenIndex;
+			this.endTokenIndex = endTokenIndex;
+		}
+
+		@Override
+		public StateChange getStateChange() {
+			return StateChange.ADD_ANNOTATION;
+		}
+
+		@Override
+		public void applyTo(State state) {
+			state.addEntity(new EntityAnnotation(state, type, beginTokenIndex, endTokenIndex));
+		}
+
+		@Override
+		public String toString() {
+			return "AddEntity [type=" + type.getName() + ", begin=" + beginTokenIndex + ", end=" + endTokenIndex
+					+ "]";
+		}
+	}
+
+	private static class RemoveEntity implements Proposal {
+		private VariableID entityID;
+
+		public RemoveEntity(VariableID entityID) {
+			this.entityID = entityID;
+		}
+
+		@Override
+		public StateChange getStateChange() {
+			return StateChange.REMOVE_ANNOTATION;
+		}
+
+		@Override
+		public void applyTo(State state) {
+			state.removeEntity(entityID);
+		}
+
+		@Override
+		public String toString() {
+			return "RemoveEntity [entity=" + entityID + "]";
+		}
+	}
+
+	private static class ChangeType implements Proposal {
+		private VariableID entityID;
+		private EntityType type;
+
+		public ChangeType(VariableID entityID, EntityType type) {
+			this.entityID = entityID;
+			this.type = type;
+		}
+
+		@Override
+		public StateChange getStateChange() {
+			return StateChange.CHANGE_TYPE;
+		}
+
+		@Override
+		public void applyTo(State state) {
+			EntityAnnotation entity = getMutableEntity(state, entityID);
+			if (entity != null) {
+				entity.setType(type);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "ChangeType [entity=" + entityID + ", type=" + type.getName() + "]";
+		}
+	}
+
+	private static class ChangeBoundary implements Proposal {
+		private VariableID entityID;
+		private int tokenIndex;
+		private boolean begin;
+
+		public ChangeBoundary(VariableID entityID, int tokenIndex, boolean begin) {
+			this.entityID = entityID;
+			this.tokenIndex = tokenIndex;
+			this.begin = begin;
+		}
+
+		@Override
+		public StateChange getStateChange() {
+			return StateChange.CHANGE_BOUNDARIES;
+		}
+
+		@Override
+		public void applyTo(State state) {
+			EntityAnnotation entity = getMutableEntity(state, entityID);
+			if (entity != null) {
+				if (begin) {
+					entity.setBeginTokenIndex(tokenIndex);
+				} else {
+					entity.setEndTokenIndex(tokenIndex);
+				}
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "ChangeBoundary [entity=" + entityID + ", " + (begin ? "begin=" : "end=") + tokenIndex + "]";
+		}
+	}
+
+	private static class MergeEntities implements Proposal {
+		private VariableID entityID1;
+		private VariableID entityID2;
+
+		public MergeEntities(VariableID entityID1, VariableID entityID2) {
+			this.entityID1 = entityID1;
+			this.entityID2 = entityID2;
+		}
+
+		@Override
+		public StateChange getStateChange() {
+			return StateChange.CHANGE_BOUNDARIES;
+		}
+
+		@Override
+		public void applyTo(State state) {
+			EntityAnnotation entity1 = state.getEntity(entityID1);
+			EntityAnnotation entity2 = state.getEntity(entityID2);
+			if (entity1 == null || entity2 == null) {
+				log.warn("Cannot merge entities %s and %s in state %s. Entity not found!", entityID1, entityID2,
+						state.getID());
+				return;
+			}
+			int beginIndex = Math.min(entity1.getBeginTokenIndex(), entity2.getBeginTokenIndex());
+			int endIndex = Math.max(entity1.getEndTokenIndex(), entity2.getEndTokenIndex());
+			HashMultimap<ArgumentRole, VariableID> arguments = HashMultimap.create(entity1.getReadOnlyArguments());
+			state.removeEntity(entityID1);
+			state.removeEntity(entityID2);
+			EntityAnnotation mergedEntity = new EntityAnnotation(state, entity1.getType(), arguments, beginIndex,
+					endIndex);
+			state.addEntity(mergedEntity);
+		}
+
+		@Override
+		public String toString() {
+			return "MergeEntities [entity1=" + entityID1 + ", entity2=" + entityID2 + "]";
+		}
+	}
+
+	private static class AddArgument implements Proposal {
+		private VariableID entityID;
+		private ArgumentRole role;
+		private VariableID argumentID;
+
+		public AddArgument(VariableID entityID, ArgumentRole role, VariableID argumentID) {
+			this.entityID = entityID;
+			this.role = role;
+			this.argumentID = argumentID;
+		}
+
+		@Override
+		public StateChange getStateChange() {
+			return StateChange.ADD_ARGUMENT;
+		}
+
+		@Override
+		public void applyTo(State state) {
+			EntityAnnotation entity = getMutableEntity(state, entityID);
+			if (entity != null) {
+				entity.addArgument(role, argumentID);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "AddArgument [entity=" + entityID + ", " + role + ":" + argumentID + "]";
+		}
+	}
+
+	private static class RemoveArgument implements Proposal {
+		private VariableID entityID;
+		private ArgumentRole role;
+		private VariableID argumentID;
+
+		public RemoveArgument(VariableID entityID, ArgumentRole role, VariableID argumentID) {
+			this.entityID = entityID;
+			this.role = role;
+			this.argumentID = argumentID;
+		}
+
+		@Override
+		public StateChange getStateChange() {
+			return StateChange.REMOVE_ARGUMENT;
+		}
+
+		@Override
+		public void applyTo(State state) {
+			EntityAnnotation entity = getMutableEntity(state, entityID);
+			if (entity != null) {
+				entity.removeArgument(role, argumentID);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "RemoveArgument [entity=" + entityID + ", " + role + ":" + argumentID + "]";
+		}
+	}
+
+	private static class ChangeArgumentRole implements Proposal {
+		private VariableID entityID;
+		private ArgumentRole role;
+		private VariableID argumentID;
+		private ArgumentRole newRole;
+
+		public ChangeArgumentRole(VariableID entityID, ArgumentRole role, VariableID argumentID,
+				ArgumentRole newRole) {
+			this.entityID = entityID;
+			this.role = role;
+			this.argumentID = argumentID;
+			this.newRole = newRole;
+		}
+
+		@Override
+		public StateChange getStateChange() {
+			return StateChange.CHANGE_ARGUMENT_ROLE;
+		}
+
+		@Override
+		public void applyTo(State state) {
+			EntityAnnotation entity = getMutableEntity(state, entityID);
+			if (entity != null) {
+				entity.removeArgument(role, argumentID);
+				entity.addArgument(newRole, argumentID);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "ChangeArgumentRole [entity=" + entityID + ", " + role + ":" + argumentID + " -> " + newRole + "]";
+		}
+	}
+
+	private static class ChangeArgumentEntity implements Proposal {
+		private VariableID entityID;
+		private ArgumentRole role;
+		private VariableID argumentID;
+		private VariableID newArgumentID;
+
+		public ChangeArgumentEntity(VariableID entityID, ArgumentRole role, VariableID argumentID,
+				VariableID newArgumentID) {
+			this.entityID = entityID;
+			this.role = role;
+			this.argumentID = argumentID;
+			this.newArgumentID = newArgumentID;
+		}
+
+		@Override
+		public StateChange getStateChange() {
+			return StateChange.CHANGE_ARGUMENT_ENTITY;
+		}
+
+		@Override
+		public void applyTo(State state) {
+			EntityAnnotation entity = getMutableEntity(state, entityID);
+			if (entity != null) {
+				entity.addArgument(role, newArgumentID);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "ChangeArgumentEntity [entity=" + entityID + ", " + role + ":" + argumentID + " -> "
+					+ newArgumentID + "]";
+		}
+	}
+}
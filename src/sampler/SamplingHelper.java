@@ -1,7 +1,6 @@
 package sampler;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -62,9 +61,9 @@ public class SamplingHelper {
 		} else {
 			/*-
 			 * if new state is worse, accept with probability p(accept).
-			 * p(accept) = exp(-(scoreNew - scoreOld)/acceptanceFactor)
+			 * p(accept) = exp((scoreNew - scoreOld)/acceptanceFactor)
 			 */
-			double pNext = Math.exp(-(nextState.getModelScore() - state.getModelScore() / acceptanceFactor));
+			double pNext = Math.exp((nextState.getModelScore() - state.getModelScore()) / acceptanceFactor);
 			if (Math.random() < pNext)
 				return true;
 			else
@@ -237,9 +236,20 @@ public class SamplingHelper {
 		return states.subList(0, Math.min(n, states.size()));
 	}
 
+	/**
+	 * Returns the n states with the highest model scores. If sort is false,
+	 * the states are assumed to be sorted already. Otherwise, the best states
+	 * are selected with a TopKSelector, without sorting (or changing) the
+	 * given list.
+	 * 
+	 * @param states
+	 * @param n
+	 * @param sort
+	 * @return
+	 */
 	public static List<State> getBest(List<State> states, int n, boolean sort) {
 		if (sort)
-			Collections.sort(states, State.modelScoreComparator);
+			return TopKSelector.selectTopK(states.stream(), n, State::getModelScore);
 		return getBest(states, n);
 	}
 
@@ -0,0 +1,70 @@
+package sampler;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import learning.ObjectiveFunction;
+import learning.Scorer;
+import variables.State;
+
+/**
+ * In each step, this sampler draws the next state from all successors of the
+ * current state with a probability proportional to their scores (objective
+ * score during training, model score otherwise) and always moves to the drawn
+ * state. The successors are drawn from an AliasTable using the
+ * SplittableRandom of this sampler. Thus, two samplers with the same seed
+ * produce the same chains.
+ */
+public class StochasticSampler extends GreedySampler<StreamingExplorer> {
+
+	private static Logger log = LogManager.getFormatterLogger(StochasticSampler.class.getName());
+
+	private SplittableRandom random;
+
+	public StochasticSampler(Scorer<State> scorer, ObjectiveFunction<State, State> objective,
+			List<StreamingExplorer> explorers, int numberOfSteps, long seed) {
+		this(scorer, objective, explorers, numberOfSteps, new SplittableRandom(seed));
+	}
+
+	public StochasticSampler(Scorer<State> scorer, ObjectiveFunction<State, State> objective,
+			List<StreamingExplorer> explorers, int numberOfSteps, SplittableRandom random) {
+		super(scorer, objective, explorers, numberOfSteps);
+		this.random = random;
+	}
+
+	@Override
+	protected State selectNextState(StreamingExplorer explorer, State currentState, State goldResult,
+			boolean training) {
+		List<State> nextStates = explorer.streamNextStates(currentState).map(nextState -> {
+			score(nextState, goldResult, training);
+			return nextState;
+		}).collect(Collectors.toList());
+		if (nextStates.isEmpty()) {
+			return null;
+		}
+		AliasTable<State> table = new AliasTable<>(nextStates, nextState -> getScore(nextState, training));
+		State drawnState = table.draw(random);
+		log.debug("Drew state %s out of %s states", drawnState, nextStates.size());
+		return drawnState;
+	}
+
+	@Override
+	protected boolean accept(State candidateState, State currentState, boolean training) {
+		return true;
+	}
+
+	/**
+	 * Returns a new sampler with the same configuration and an independent
+	 * random number generator that is split off from the generator of this
+	 * sampler, e.g. for another chain of a multi-chain run.
+	 *
+	 * @return
+	 */
+	public StochasticSampler split() {
+		return new StochasticSampler(scorer, objective, explorers, numberOfSteps, random.split());
+	}
+}
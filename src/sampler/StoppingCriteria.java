@@ -0,0 +1,129 @@
+package sampler;
+
+import java.util.Arrays;
+import java.util.List;
+
+import variables.State;
+
+/**
+ * Factory methods for the stopping criteria of the samplers.
+ */
+public class StoppingCriteria {
+
+	private StoppingCriteria() {
+	}
+
+	/**
+	 * The chain converged if the annotations of the current state did not
+	 * change during the last numberOfSteps steps.
+	 * 
+	 * @param numberOfSteps
+	 * @return
+	 */
+	public static StoppingCriterion unchanged(int numberOfSteps) {
+		return new Unchanged(numberOfSteps);
+	}
+
+	/**
+	 * The chain converged if the score of the current state improved by less
+	 * than epsilon during the last numberOfSteps steps.
+	 * 
+	 * @param numberOfSteps
+	 * @param epsilon
+	 * @return
+	 */
+	public static StoppingCriterion scoreGainBelow(int numberOfSteps, double epsilon) {
+		return new ScoreGainBelow(numberOfSteps, epsilon);
+	}
+
+	/**
+	 * The chain converged as soon as one of the given criteria is met.
+	 * 
+	 * @param criteria
+	 * @return
+	 */
+	public static StoppingCriterion anyOf(StoppingCriterion... criteria) {
+		return new AnyOf(Arrays.asList(criteria));
+	}
+
+	private static double getScore(State state, boolean training) {
+		return training ? state.getObjectiveScore() : state.getModelScore();
+	}
+
+	private static class Unchanged implements StoppingCriterion {
+		private int numberOfSteps;
+
+		public Unchanged(int numberOfSteps) {
+			this.numberOfSteps = numberOfSteps;
+		}
+
+		@Override
+		public boolean isConverged(List<State> chain, boolean training) {
+			if (chain.size() <= numberOfSteps) {
+				return false;
+			}
+			State currentState = chain.get(chain.size() - 1);
+			for (int i = chain.size() - 1 - numberOfSteps; i < chain.size() - 1; i++) {
+				State previousState = chain.get(i);
+				if (previousState != currentState && (previousState.getStructuralHash() != currentState
+						.getStructuralHash() || !previousState.hasSameAnnotations(currentState))) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			return "Unchanged [numberOfSteps=" + numberOfSteps + "]";
+		}
+	}
+
+	private static class ScoreGainBelow implements StoppingCriterion {
+		private int numberOfSteps;
+		private double epsilon;
+
+		public ScoreGainBelow(int numberOfSteps, double epsilon) {
+			this.numberOfSteps = numberOfSteps;
+			this.epsilon = epsilon;
+		}
+
+		@Override
+		public boolean isConverged(List<State> chain, boolean training) {
+			if (chain.size() <= numberOfSteps) {
+				return false;
+			}
+			double currentScore = getScore(chain.get(chain.size() - 1), training);
+			double previousScore = getScore(chain.get(chain.size() - 1 - numberOfSteps), training);
+			return currentScore - previousScore < epsilon;
+		}
+
+		@Override
+		public String toString() {
+			return "ScoreGainBelow [numberOfSteps=" + numberOfSteps + ", epsilon=" + epsilon + "]";
+		}
+	}
+
+	private static class AnyOf implements StoppingCriterion {
+		private List<StoppingCriterion> criteria;
+
+		public AnyOf(List<StoppingCriterion> criteria) {
+			this.criteria = criteria;
+		}
+
+		@Override
+		public boolean isConverged(List<State> chain, boolean training) {
+			for (StoppingCriterion criterion : criteria) {
+				if (criterion.isConverged(chain, training)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public String toString() {
+			return "AnyOf " + criteria;
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package sampler;
+
+import java.io.Serializable;
+import java.util.List;
+
+import variables.State;
+
+/**
+ * Decides whether a sampling chain has converged and can end before the
+ * maximum number of steps is reached. See StoppingCriteria for the available
+ * criteria. Implementations must not keep any state of their own, so that a
+ * single criterion can be shared between concurrently generated chains.
+ */
+public interface StoppingCriterion extends Serializable {
+
+	/**
+	 * Checks the chain after each sampling step.
+	 * 
+	 * @param chain
+	 *            the current state after each of the steps so far
+	 * @param training
+	 *            whether states are compared by their objective score or by
+	 *            their model score
+	 * @return
+	 */
+	public boolean isConverged(List<State> chain, boolean training);
+
+}
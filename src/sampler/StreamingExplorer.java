@@ -0,0 +1,17 @@
+package sampler;
+
+import java.util.stream.Stream;
+
+import variables.State;
+
+/**
+ * Explorers implementing this interface generate their next states lazily.
+ * Each state is only created when the stream reaches it, so that a consumer
+ * that scores the states one by one only keeps those states in memory that it
+ * decides to keep.
+ */
+public interface StreamingExplorer {
+
+	public Stream<State> streamNextStates(State previousState);
+
+}
@@ -0,0 +1,48 @@
+package sampler;
+
+import java.util.stream.Collectors;
+
+import sampling.Explorer;
+import variables.State;
+
+/**
+ * Adapters between the list based Explorer interface and the StreamingExplorer
+ * interface.
+ */
+public class StreamingExplorers {
+
+	private StreamingExplorers() {
+	}
+
+	/**
+	 * Returns the given explorer as a StreamingExplorer. If the explorer
+	 * already supports streaming, it is returned as it is. Otherwise, the
+	 * returned explorer streams the list that the given explorer generates.
+	 * 
+	 * @param explorer
+	 * @return
+	 */
+	public static StreamingExplorer asStreamingExplorer(Explorer<State> explorer) {
+		if (explorer instanceof StreamingExplorer) {
+			return (StreamingExplorer) explorer;
+		}
+		return previousState -> explorer.getNextStates(previousState).stream();
+	}
+
+	/**
+	 * Returns the given streaming explorer as an Explorer that collects all
+	 * streamed states into a list, so that it can be used with the existing
+	 * samplers.
+	 * 
+	 * @param explorer
+	 * @return
+	 */
+	public static Explorer<State> asExplorer(StreamingExplorer explorer) {
+		if (explorer instanceof Explorer) {
+			@SuppressWarnings("unchecked")
+			Explorer<State> listExplorer = (Explorer<State>) explorer;
+			return listExplorer;
+		}
+		return previousState -> explorer.streamNextStates(previousState).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,67 @@
+package sampler;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import learning.ObjectiveFunction;
+import learning.Scorer;
+import variables.State;
+
+/**
+ * This sampler consumes the next states of its explorers as a stream and
+ * scores them one by one. Only the best state seen so far is kept, so all
+ * other states become garbage right after they were scored. Use
+ * StreamingExplorers.asStreamingExplorer() to use list based explorers with
+ * this sampler. If a ForkJoinPool is given, the states of each step are
+ * created and scored in parallel on this pool. The selected state does not
+ * depend on the number of threads, since ties are always resolved in favor of
+ * the state that comes first in the stream.
+ */
+public class StreamingSampler extends GreedySampler<StreamingExplorer> {
+
+	private static Logger log = LogManager.getFormatterLogger(StreamingSampler.class.getName());
+
+	private ForkJoinPool pool;
+
+	public StreamingSampler(Scorer<State> scorer, ObjectiveFunction<State, State> objective,
+			List<StreamingExplorer> explorers, int numberOfSteps) {
+		this(scorer, objective, explorers, numberOfSteps, null);
+	}
+
+	public StreamingSampler(Scorer<State> scorer, ObjectiveFunction<State, State> objective,
+			List<StreamingExplorer> explorers, int numberOfSteps, ForkJoinPool pool) {
+		super(scorer, objective, explorers, numberOfSteps);
+		this.pool = pool;
+	}
+
+	@Override
+	protected State selectNextState(StreamingExplorer explorer, State currentState, State goldResult,
+			boolean training) {
+		if (pool != null) {
+			return selectNextStateInParallel(explorer, currentState, goldResult, training);
+		}
+		TopKSelector<State> selector = new TopKSelector<>(1, nextState -> getScore(nextState, training));
+		Iterator<State> nextStates = explorer.streamNextStates(currentState).iterator();
+		while (nextStates.hasNext()) {
+			State nextState = nextStates.next();
+			score(nextState, goldResult, training);
+			selector.offer(nextState);
+		}
+		State bestState = selector.getFirst();
+		log.debug("Selected state %s out of %s streamed states", bestState, selector.getNumberOfOfferedElements());
+		return bestState;
+	}
+
+	private State selectNextStateInParallel(StreamingExplorer explorer, State currentState, State goldResult,
+			boolean training) {
+		return pool.submit(() -> explorer.streamNextStates(currentState).parallel().map(nextState -> {
+			score(nextState, goldResult, training);
+			return nextState;
+		}).reduce((s1, s2) -> getScore(s2, training) > getScore(s1, training) ? s2 : s1).orElse(null)).join();
+	}
+
+}
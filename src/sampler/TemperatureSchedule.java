@@ -0,0 +1,26 @@
+package sampler;
+
+import java.io.Serializable;
+
+/**
+ * Defines how the temperature of simulated annealing develops over the steps
+ * of a chain. See TemperatureSchedules for the available schedules.
+ */
+public interface TemperatureSchedule extends Serializable {
+
+	public double getInitialTemperature();
+
+	/**
+	 * Computes the temperature for the next step.
+	 * 
+	 * @param step
+	 *            the number of completed steps
+	 * @param temperature
+	 *            the current temperature
+	 * @param acceptanceRate
+	 *            the fraction of recently accepted proposals
+	 * @return
+	 */
+	public double nextTemperature(int step, double temperature, double acceptanceRate);
+
+}
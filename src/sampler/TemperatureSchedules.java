@@ -0,0 +1,136 @@
+package sampler;
+
+/**
+ * Factory methods for the temperature schedules of the AnnealingSampler.
+ */
+public class TemperatureSchedules {
+
+	private TemperatureSchedules() {
+	}
+
+	/**
+	 * Decreases the temperature linearly from the initial to the final
+	 * temperature within the given number of steps.
+	 * 
+	 * @param initialTemperature
+	 * @param finalTemperature
+	 * @param numberOfSteps
+	 * @return
+	 */
+	public static TemperatureSchedule linear(double initialTemperature, double finalTemperature, int numberOfSteps) {
+		return new Linear(initialTemperature, finalTemperature, numberOfSteps);
+	}
+
+	/**
+	 * Multiplies the temperature with the cooling factor after each step.
+	 * 
+	 * @param initialTemperature
+	 * @param coolingFactor
+	 * @return
+	 */
+	public static TemperatureSchedule exponential(double initialTemperature, double coolingFactor) {
+		return new Exponential(initialTemperature, coolingFactor);
+	}
+
+	/**
+	 * Cools down (multiplies the temperature with the cooling factor) as long
+	 * as more proposals than the target acceptance rate are accepted and heats
+	 * up (divides by the cooling factor, up to the initial temperature)
+	 * otherwise.
+	 * 
+	 * @param initialTemperature
+	 * @param coolingFactor
+	 * @param targetAcceptanceRate
+	 * @return
+	 */
+	public static TemperatureSchedule adaptive(double initialTemperature, double coolingFactor,
+			double targetAcceptanceRate) {
+		return new Adaptive(initialTemperature, coolingFactor, targetAcceptanceRate);
+	}
+
+	private static class Linear implements TemperatureSchedule {
+		private double initialTemperature;
+		private double finalTemperature;
+		private int numberOfSteps;
+
+		public Linear(double initialTemperature, double finalTemperature, int numberOfSteps) {
+			this.initialTemperature = initialTemperature;
+			this.finalTemperature = finalTemperature;
+			this.numberOfSteps = numberOfSteps;
+		}
+
+		@Override
+		public double getInitialTemperature() {
+			return initialTemperature;
+		}
+
+		@Override
+		public double nextTemperature(int step, double temperature, double acceptanceRate) {
+			double progress = Math.min(1, (double) step / numberOfSteps);
+			return initialTemperature + (finalTemperature - initialTemperature) * progress;
+		}
+
+		@Override
+		public String toString() {
+			return "Linear [initialTemperature=" + initialTemperature + ", finalTemperature=" + finalTemperature
+					+ ", numberOfSteps=" + numberOfSteps + "]";
+		}
+	}
+
+	private static class Exponential implements TemperatureSchedule {
+		private double initialTemperature;
+		private double coolingFactor;
+
+		public Exponential(double initialTemperature, double coolingFactor) {
+			this.initialTemperature = initialTemperature;
+			this.coolingFactor = coolingFactor;
+		}
+
+		@Override
+		public double getInitialTemperature() {
+			return initialTemperature;
+		}
+
+		@Override
+		public double nextTemperature(int step, double temperature, double acceptanceRate) {
+			return temperature * coolingFactor;
+		}
+
+		@Override
+		public String toString() {
+			return "Exponential [initialTemperature=" + initialTemperature + ", coolingFactor=" + coolingFactor + "]";
+		}
+	}
+
+	private static class Adaptive implements TemperatureSchedule {
+		private double initialTemperature;
+		private double coolingFactor;
+		private double targetAcceptanceRate;
+
+		public Adaptive(double initialTemperature, double coolingFactor, double targetAcceptanceRate) {
+			this.initialTemperature = initialTemperature;
+			this.coolingFactor = coolingFactor;
+			this.targetAcceptanceRate = targetAcceptanceRate;
+		}
+
+		@Override
+		public double getInitialTemperature() {
+			return initialTemperature;
+		}
+
+		@Override
+		public double nextTemperature(int step, double temperature, double acceptanceRate) {
+			if (acceptanceRate > targetAcceptanceRate) {
+				return temperature * coolingFactor;
+			} else {
+				return Math.min(initialTemperature, temperature / coolingFactor);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "Adaptive [initialTemperature=" + initialTemperature + ", coolingFactor=" + coolingFactor
+					+ ", targetAcceptanceRate=" + targetAcceptanceRate + "]";
+		}
+	}
+}
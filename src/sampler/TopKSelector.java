@@ -0,0 +1,144 @@
+package sampler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Stream;
+
+/**
+ * Selects the k elements with the highest scores from a sequence of elements
+ * without sorting or storing the whole sequence. The elements are kept in a
+ * bounded min-heap, so that at most k elements are referenced at any time and
+ * all other elements can be garbage collected right after they were offered.
+ * Elements with equal scores are ranked by the order in which they were
+ * offered.
+ *
+ * @param <T>
+ */
+public class TopKSelector<T> {
+
+	private final int k;
+	private final ToDoubleFunction<? super T> scoreFunction;
+	/**
+	 * The worst of the currently selected elements is at the head of this
+	 * heap. Only used for k > 1.
+	 */
+	private final PriorityQueue<ScoredElement<T>> heap;
+	/**
+	 * The best element for k = 1.
+	 */
+	private ScoredElement<T> best;
+	private long numberOfOfferedElements = 0;
+
+	public TopKSelector(int k, ToDoubleFunction<? super T> scoreFunction) {
+		if (k < 1) {
+			throw new IllegalArgumentException(String.format("k must be at least 1 but was %s", k));
+		}
+		this.k = k;
+		this.scoreFunction = scoreFunction;
+		this.heap = k > 1 ? new PriorityQueue<>(k, worstFirst()) : null;
+	}
+
+	/**
+	 * Selects the k best elements of the given stream.
+	 *
+	 * @param elements
+	 * @param k
+	 * @param scoreFunction
+	 * @return
+	 */
+	public static <T> List<T> selectTopK(Stream<T> elements, int k, ToDoubleFunction<? super T> scoreFunction) {
+		TopKSelector<T> selector = new TopKSelector<>(k, scoreFunction);
+		elements.forEachOrdered(selector::offer);
+		return selector.getBest();
+	}
+
+	public void offer(T element) {
+		ScoredElement<T> scoredElement = new ScoredElement<>(element, scoreFunction.applyAsDouble(element),
+				numberOfOfferedElements++);
+		if (heap == null) {
+			if (best == null || isBetter(scoredElement, best)) {
+				best = scoredElement;
+			}
+		} else if (heap.size() < k) {
+			heap.add(scoredElement);
+		} else if (isBetter(scoredElement, heap.peek())) {
+			heap.poll();
+			heap.add(scoredElement);
+		}
+	}
+
+	/**
+	 * Returns the selected elements, best first.
+	 *
+	 * @return
+	 */
+	public List<T> getBest() {
+		List<T> bestElements = new ArrayList<>();
+		if (heap == null) {
+			if (best != null) {
+				bestElements.add(best.element);
+			}
+			return bestElements;
+		}
+		List<ScoredElement<T>> scoredElements = new ArrayList<>(heap);
+		Collections.sort(scoredElements, TopKSelector.<T> worstFirst().reversed());
+		for (ScoredElement<T> scoredElement : scoredElements) {
+			bestElements.add(scoredElement.element);
+		}
+		return bestElements;
+	}
+
+	/**
+	 * Returns the best element that was offered so far or null if no element
+	 * was offered.
+	 *
+	 * @return
+	 */
+	public T getFirst() {
+		if (heap == null) {
+			return best != null ? best.element : null;
+		}
+		List<T> bestElements = getBest();
+		return bestElements.isEmpty() ? null : bestElements.get(0);
+	}
+
+	public long getNumberOfOfferedElements() {
+		return numberOfOfferedElements;
+	}
+
+	private static <T> boolean isBetter(ScoredElement<T> e1, ScoredElement<T> e2) {
+		return TopKSelector.<T> worstFirst().compare(e1, e2) > 0;
+	}
+
+	/**
+	 * Orders elements by ascending score. Of two elements with the same score,
+	 * the one that was offered later is considered worse.
+	 *
+	 * @return
+	 */
+	private static <T> Comparator<ScoredElement<T>> worstFirst() {
+		return (e1, e2) -> {
+			int c = Double.compare(e1.score, e2.score);
+			if (c != 0) {
+				return c;
+			}
+			return Long.compare(e2.index, e1.index);
+		};
+	}
+
+	private static class ScoredElement<T> {
+		private final T element;
+		private final double score;
+		private final long index;
+
+		public ScoredElement(T element, double score, long index) {
+			this.element = element;
+			this.score = score;
+			this.index = index;
+		}
+	}
+}
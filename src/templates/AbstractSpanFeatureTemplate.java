@@ -0,0 +1,81 @@
+package templates;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.collect.Sets;
+
+import changes.StateChange;
+import factors.AbstractFactor;
+import factors.impl.SingleVariableFactor;
+import learning.Vector;
+import utility.VariableID;
+import variables.EntityAnnotation;
+import variables.State;
+
+/**
+ * Base class of the templates that compute a single factor per entity, whose
+ * features only depend on the document, the token span and the type of the
+ * entity. The features of an entity are taken from the SpanFeatureCache of the
+ * template or, on a cache miss, computed by computeFeatures(). Thus, only the
+ * entities that a proposal changed need to be computed.
+ */
+public abstract class AbstractSpanFeatureTemplate extends AbstractTemplate<State> {
+
+	private static Logger log = LogManager.getFormatterLogger(AbstractSpanFeatureTemplate.class.getName());
+
+	private transient volatile SpanFeatureCache featureCache;
+
+	public final Set<StateChange> relevantChanges = Sets.newHashSet(StateChange.ADD_ANNOTATION,
+			StateChange.CHANGE_BOUNDARIES, StateChange.CHANGE_TYPE, StateChange.REMOVE_ANNOTATION);
+
+	@Override
+	public void computeFactor(State state, AbstractFactor abstractFactor) {
+		// TODO features on unannotated tokens (thus, type/name = "null") might
+		// be useful
+		if (abstractFactor instanceof SingleVariableFactor) {
+
+			SingleVariableFactor factor = (SingleVariableFactor) abstractFactor;
+			EntityAnnotation entity = state.getEntity(factor.entityID);
+			Vector featureVector = getFeatureCache().get(state, entity, () -> computeFeatures(state, entity));
+			log.debug("%s: Features for entity %s (\"%s\"): %s", this.getClass().getSimpleName(), entity.getID(),
+					entity.getText(), featureVector);
+			factor.setFeatures(featureVector);
+		} else {
+			log.warn("Provided factor with ID %s not of type SingleEntityFactor.", abstractFactor.getID());
+		}
+	}
+
+	/**
+	 * Computes the features of the given entity. The features may only depend
+	 * on the document, the token span and the type of the entity, since they
+	 * are cached by these properties. The returned vector is shared by all
+	 * factors of the same span and must not be modified afterwards.
+	 *
+	 * @param state
+	 * @param entity
+	 * @return
+	 */
+	protected abstract Vector computeFeatures(State state, EntityAnnotation entity);
+
+	public SpanFeatureCache getFeatureCache() {
+		SpanFeatureCache cache = featureCache;
+		if (cache == null) {
+			cache = new SpanFeatureCache();
+			featureCache = cache;
+		}
+		return cache;
+	}
+
+	@Override
+	protected Set<AbstractFactor> generateFactors(State state) {
+		Set<AbstractFactor> factors = new HashSet<>();
+		for (VariableID entityID : state.getEntityIDs()) {
+			factors.add(new SingleVariableFactor(this, entityID));
+		}
+		return factors;
+	}
+}
@@ -1,68 +1,56 @@
 package templates;
 
 import java.io.Serializable;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import com.google.common.collect.Sets;
-
-import changes.StateChange;
 import corpus.Token;
-import factors.AbstractFactor;
-import factors.impl.SingleVariableFactor;
 import learning.Vector;
-import utility.VariableID;
 import variables.EntityAnnotation;
 import variables.State;
 
-public class ContextTemplate extends AbstractTemplate<State>implements Serializable {
+public class ContextTemplate extends AbstractSpanFeatureTemplate implements Serializable {
 
 	private static Logger log = LogManager.getFormatterLogger(ContextTemplate.class.getName());
 
-	public final Set<StateChange> relevantChanges = Sets.newHashSet(StateChange.ADD_ANNOTATION,
-			StateChange.CHANGE_BOUNDARIES, StateChange.CHANGE_TYPE, StateChange.REMOVE_ANNOTATION);
+	private static final String ENTITY_TYPE = "ENTITY_TYPE=";
+	private static final int[] TOKEN_OFFSETS = { -2, -1, 1, 2 };
+	private static final String[] TOKEN_AT = { "_TOKEN@-2_EQUALS=", "_TOKEN@-1_EQUALS=", "_TOKEN@+1_EQUALS=",
+			"_TOKEN@+2_EQUALS=" };
 
-	@Override
-	public void computeFactor(State state, AbstractFactor abstractFactor) {
-		if (abstractFactor instanceof SingleVariableFactor) {
+	private FeatureIndex featureIndex;
 
-			SingleVariableFactor factor = (SingleVariableFactor) abstractFactor;
-			EntityAnnotation entity = state.getEntity(factor.entityID);
-			log.debug("%s: Add features to entity %s (\"%s\"):", this.getClass().getSimpleName(), entity.getID(),
-					entity.getText());
+	public ContextTemplate() {
+		this(new FeatureIndex());
+	}
 
-			Vector featureVector = new Vector();
+	public ContextTemplate(FeatureIndex featureIndex) {
+		this.featureIndex = featureIndex;
+	}
 
-			String entityTypePrefix = "ENTITY_TYPE=" + entity.getType().getName() + "_";
+	@Override
+	protected Vector computeFeatures(State state, EntityAnnotation entity) {
+		log.debug("%s: Add features to entity %s (\"%s\"):", this.getClass().getSimpleName(), entity.getID(),
+				entity.getText());
 
-			int[] tokenOffsets = { -2, -1, 1, 2 };
-			for (int i : tokenOffsets) {
-				Token tokenAt = Features.getTokenRelativeToEntity(state, entity, i);
-				if (tokenAt != null) {
-					String at = i > 0 ? "+" + String.valueOf(i) : String.valueOf(i);
-					featureVector.set(entityTypePrefix + "TOKEN@" + at + "_EQUALS=" + tokenAt.getText(), 1.0);
-				}
-			}
+		IndexedVector featureVector = new IndexedVector();
+
+		String type = entity.getType().getName();
 
-			log.debug("%s: Features for entity %s (\"%s\"): %s", this.getClass().getSimpleName(), entity.getID(),
-					entity.getText(), featureVector);
-			factor.setFeatures(featureVector);
-		} else {
-			log.warn("Provided factor with ID %s not of type SingleEntityFactor.", abstractFactor.getID());
+		for (int k = 0; k < TOKEN_OFFSETS.length; k++) {
+			Token tokenAt = Features.getTokenRelativeToEntity(state, entity, TOKEN_OFFSETS[k]);
+			if (tokenAt != null) {
+				featureVector.set(featureIndex.getID(ENTITY_TYPE, type, TOKEN_AT[k], tokenAt.getText()), 1.0);
+			}
 		}
-	}
 
+		return featureVector.toVector(featureIndex);
+	}
 
-	@Override
-	protected Set<AbstractFactor> generateFactors(State state) {
-		Set<AbstractFactor> variableSets = new HashSet<>();
-		for (VariableID entityID : state.getEntityIDs()) {
-			variableSets.add(new SingleVariableFactor(this, entityID));
-		}
-		return variableSets;
+	public FeatureIndex getFeatureIndex() {
+		return featureIndex;
 	}
+
 }
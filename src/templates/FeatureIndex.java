@@ -0,0 +1,202 @@
+package templates;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Maps feature names to dense integer IDs, so that templates do not need to
+ * build the name of a feature by string concatenation each time the feature is
+ * computed. A feature is identified by the parts that its name consists of
+ * (e.g. "ENTITY_TYPE=", type, "_FIRST_TOKEN_EQUALS=", text). The name itself
+ * is the concatenation of these parts and is only built once, when the feature
+ * is seen for the first time.
+ * 
+ * Alternatively, the index can use the hashing trick: the parts are hashed
+ * into a fixed number of buckets and features in the same bucket share their
+ * weight. In this case, no feature names are stored. The index counts how
+ * often two different features were mapped to the same bucket.
+ * 
+ * All methods can be called concurrently.
+ */
+public class FeatureIndex implements Serializable {
+
+	private static Logger log = LogManager.getFormatterLogger(FeatureIndex.class.getName());
+
+	private static final String HASHED_FEATURE_PREFIX = "HASHED_FEATURE=";
+
+	private final Node root = new Node();
+	private volatile String[] names = new String[1024];
+	private int numberOfFeatures = 0;
+
+	private final int hashBits;
+	/**
+	 * The fingerprint of the first feature that was mapped to each bucket, or
+	 * 0 if the bucket is still empty.
+	 */
+	private AtomicLongArray bucketFingerprints;
+	private ConcurrentHashMap<Integer, String> bucketNames;
+	private AtomicLong numberOfCollisions;
+	private AtomicLong numberOfUsedBuckets;
+
+	/**
+	 * Creates an index that assigns a distinct ID to each distinct feature.
+	 */
+	public FeatureIndex() {
+		this.hashBits = 0;
+	}
+
+	/**
+	 * Creates an index that hashes the features into 2^hashBits buckets.
+	 * 
+	 * @param hashBits
+	 */
+	public FeatureIndex(int hashBits) {
+		if (hashBits < 1 || hashBits > 30) {
+			throw new IllegalArgumentException("Number of hash bits must be between 1 and 30, but was " + hashBits);
+		}
+		this.hashBits = hashBits;
+		this.bucketFingerprints = new AtomicLongArray(1 << hashBits);
+		this.bucketNames = new ConcurrentHashMap<>();
+		this.numberOfCollisions = new AtomicLong();
+		this.numberOfUsedBuckets = new AtomicLong();
+	}
+
+	/**
+	 * Returns the ID of the feature whose name is the concatenation of the
+	 * given parts.
+	 * 
+	 * @param parts
+	 * @return
+	 */
+	public int getID(String... parts) {
+		if (isHashing()) {
+			return getBucket(parts);
+		}
+		Node node = root;
+		for (String part : parts) {
+			Node child = node.children.get(part);
+			if (child == null) {
+				child = node.children.computeIfAbsent(part, p -> new Node());
+			}
+			node = child;
+		}
+		int id = node.id;
+		if (id < 0) {
+			id = assignID(node, parts);
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the name of the feature with the given ID. When hashing is used,
+	 * this is the name of the bucket.
+	 * 
+	 * @param id
+	 * @return
+	 */
+	public String getName(int id) {
+		if (isHashing()) {
+			return bucketNames.computeIfAbsent(id, bucket -> HASHED_FEATURE_PREFIX + bucket);
+		}
+		return names[id];
+	}
+
+	private synchronized int assignID(Node node, String[] parts) {
+		if (node.id >= 0) {
+			return node.id;
+		}
+		int id = numberOfFeatures++;
+		if (id == names.length) {
+			String[] newNames = new String[names.length * 2];
+			System.arraycopy(names, 0, newNames, 0, names.length);
+			names = newNames;
+		}
+		names[id] = String.join("", parts);
+		node.id = id;
+		return id;
+	}
+
+	private int getBucket(String[] parts) {
+		long hash = 17;
+		long fingerprint = 31;
+		for (String part : parts) {
+			int partHash = part.hashCode();
+			hash = mix(hash + partHash);
+			fingerprint = mix(fingerprint ^ (partHash + 0x9E3779B97F4A7C15L * part.length()));
+		}
+		int bucket = (int) (hash >>> (64 - hashBits));
+		fingerprint |= 1;
+		long bucketFingerprint = bucketFingerprints.get(bucket);
+		if (bucketFingerprint == 0 && bucketFingerprints.compareAndSet(bucket, 0, fingerprint)) {
+			numberOfUsedBuckets.incrementAndGet();
+		} else if (bucketFingerprints.get(bucket) != fingerprint) {
+			numberOfCollisions.incrementAndGet();
+		}
+		return bucket;
+	}
+
+	/**
+	 * The finalizer of SplitMix64.
+	 * 
+	 * @param z
+	 * @return
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	public boolean isHashing() {
+		return hashBits > 0;
+	}
+
+	/**
+	 * The number of distinct features or, when hashing is used, the number of
+	 * buckets.
+	 * 
+	 * @return
+	 */
+	public synchronized int getNumberOfFeatures() {
+		return isHashing() ? bucketFingerprints.length() : numberOfFeatures;
+	}
+
+	/**
+	 * The number of lookups of a feature whose bucket was already occupied by
+	 * another feature. Always 0 if no hashing is used.
+	 * 
+	 * @return
+	 */
+	public long getNumberOfCollisions() {
+		return isHashing() ? numberOfCollisions.get() : 0;
+	}
+
+	/**
+	 * The number of buckets that contain at least one feature. Equals the
+	 * number of features if no hashing is used.
+	 * 
+	 * @return
+	 */
+	public long getNumberOfUsedBuckets() {
+		return isHashing() ? numberOfUsedBuckets.get() : getNumberOfFeatures();
+	}
+
+	public void logStatistics() {
+		if (isHashing()) {
+			log.info("Feature hashing: %s of %s buckets used, %s collisions", numberOfUsedBuckets.get(),
+					bucketFingerprints.length(), numberOfCollisions.get());
+		} else {
+			log.info("Feature index: %s distinct features", getNumberOfFeatures());
+		}
+	}
+
+	private static class Node implements Serializable {
+		private final ConcurrentHashMap<String, Node> children = new ConcurrentHashMap<>(4);
+		private volatile int id = -1;
+	}
+}
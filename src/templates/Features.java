@@ -3,6 +3,7 @@ package templates;
 import java.util.List;
 
 import corpus.Token;
+import corpus.TokenShape;
 import variables.EntityAnnotation;
 import variables.State;
 
@@ -16,85 +17,17 @@ public class Features {
 
 	public static final String PUNCTUATION = "!\"#$%&'\\(\\)\\*\\+,-\\./:;<=>\\?@\\[\\]\\^_`{\\|}~";
 
-	public static final TokenFeature ContainsDigit = new TokenFeature() {
-
-		@Override
-		public boolean apply(Token token) {
-			return containsDigit(token.getText());
-		}
-	};
-	public static final TokenFeature ContainsHyphen = new TokenFeature() {
-
-		@Override
-		public boolean apply(Token token) {
-			return containsHyphen(token.getText());
-		}
-	};
-	public static final TokenFeature ContainsGreek = new TokenFeature() {
-
-		@Override
-		public boolean apply(Token token) {
-			return containsGreek(token.getText());
-		}
-	};
-
-	public static final TokenFeature ContainsPunctuation = new TokenFeature() {
-
-		@Override
-		public boolean apply(Token token) {
-			return containsPunctuation(token.getText());
-		}
-	};
-
-	public static final TokenFeature StartsWithCapital = new TokenFeature() {
-
-		@Override
-		public boolean apply(Token token) {
-			return startsWithUppercase(token.getText());
-		}
-	};
-	public static final TokenFeature AllCapital = new TokenFeature() {
-
-		@Override
-		public boolean apply(Token token) {
-			return isUppercase(token.getText());
-		}
-	};
+	public static final TokenFeature ContainsDigit = new TokenFeature(TokenShape.CONTAINS_DIGIT);
+	public static final TokenFeature ContainsHyphen = new TokenFeature(TokenShape.CONTAINS_HYPHEN);
+	public static final TokenFeature ContainsGreek = new TokenFeature(TokenShape.CONTAINS_GREEK);
+	public static final TokenFeature ContainsPunctuation = new TokenFeature(TokenShape.CONTAINS_PUNCTUATION);
+	public static final TokenFeature StartsWithCapital = new TokenFeature(TokenShape.STARTS_WITH_CAPITAL);
+	public static final TokenFeature AllCapital = new TokenFeature(TokenShape.ALL_CAPITAL);
 
 	public static double b2d(boolean b) {
 		return b ? 1 : 0;
 	}
 
-	private static boolean containsDigit(String text) {
-		return contains(text, "\\d");
-	}
-
-	private static boolean containsHyphen(String text) {
-		return contains(text, "-");
-	}
-
-	private static boolean containsGreek(String text) {
-		// TODO Unicode pattern
-		return contains(text, "\\p{InGreekExtended}");
-	}
-
-	private static boolean containsPunctuation(String text) {
-		return contains(text, String.format("[%s]", PUNCTUATION));
-	}
-
-	private static boolean startsWithUppercase(String text) {
-		return isUppercase(text.substring(0, 1));
-	}
-
-	private static boolean isUppercase(String text) {
-		// TODO US-ASCII pattern
-		return text.matches("[\\p{Upper}]+");
-	}
-
-	private static boolean contains(String text, String regex) {
-		return text.matches(String.format(".*%s.*", regex));
-	}
-
 	public static Token getTokenRelativeToEntity(State state, EntityAnnotation e, int at) {
 		int absolutPosition = -1;
 		if (at < 0)
@@ -122,8 +55,37 @@ public class Features {
 	}
 }
 
-abstract class TokenFeature {
-	public abstract boolean apply(Token token);
+/**
+ * A boolean property of tokens, represented by its bit in the masks of
+ * {@link TokenShape}. The span methods evaluate the property on the
+ * precomputed shape table of a document, the list methods on the token texts.
+ */
+class TokenFeature {
+	private int bit;
+
+	TokenFeature(int bit) {
+		this.bit = bit;
+	}
+
+	public boolean apply(Token token) {
+		return (TokenShape.computeShape(token.getText()) & bit) != 0;
+	}
+
+	public double all(TokenShape shape, int begin, int end) {
+		return Features.b2d((shape.all(begin, end) & bit) != 0);
+	}
+
+	public double any(TokenShape shape, int begin, int end) {
+		return Features.b2d((shape.any(begin, end) & bit) != 0);
+	}
+
+	public double first(TokenShape shape, int begin, int end) {
+		return Features.b2d((shape.getShape(begin) & bit) != 0);
+	}
+
+	public double last(TokenShape shape, int begin, int end) {
+		return Features.b2d((shape.getShape(end - 1) & bit) != 0);
+	}
 
 	public double all(List<Token> tokens) {
 		for (Token token : tokens) {
@@ -148,4 +110,4 @@ abstract class TokenFeature {
 		}
 		return 0;
 	}
-}
\ No newline at end of file
+}
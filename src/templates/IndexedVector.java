@@ -0,0 +1,90 @@
+package templates;
+
+import java.util.Arrays;
+
+import learning.Vector;
+
+/**
+ * A sparse feature vector that stores the IDs of a FeatureIndex and their
+ * values in primitive arrays. Templates fill this vector and convert it into
+ * a Vector only once all features of a factor were computed. Templates with a
+ * SpanFeatureCache convert on a cache miss only, so the converted Vector is
+ * shared by all factors of the same span.
+ */
+public class IndexedVector {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int[] ids;
+	private double[] values;
+	private int size = 0;
+
+	public IndexedVector() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public IndexedVector(int capacity) {
+		this.ids = new int[Math.max(1, capacity)];
+		this.values = new double[ids.length];
+	}
+
+	/**
+	 * Sets the value of the feature with the given ID. If a feature is set
+	 * several times, the last value is used by toVector().
+	 * 
+	 * @param id
+	 * @param value
+	 */
+	public void set(int id, double value) {
+		if (size == ids.length) {
+			ids = Arrays.copyOf(ids, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+		ids[size] = id;
+		values[size] = value;
+		size++;
+	}
+
+	public void set(int id, boolean value) {
+		set(id, value ? 1.0 : 0.0);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getID(int i) {
+		return ids[i];
+	}
+
+	public double getValue(int i) {
+		return values[i];
+	}
+
+	/**
+	 * Converts this vector into a Vector whose features are named by the given
+	 * index.
+	 * 
+	 * @param index
+	 * @return
+	 */
+	public Vector toVector(FeatureIndex index) {
+		Vector vector = new Vector();
+		for (int i = 0; i < size; i++) {
+			vector.set(index.getName(ids[i]), values[i]);
+		}
+		return vector;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("IndexedVector [");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			builder.append(ids[i]).append("=").append(values[i]);
+		}
+		return builder.append("]").toString();
+	}
+}
@@ -2,6 +2,7 @@ package templates;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -9,70 +10,137 @@ import java.util.Set;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.google.common.collect.Multiset;
+
 import factors.AbstractFactor;
-import factors.TokenFactor;
 import factors.impl.UnorderedVariablesFactor;
 import learning.Vector;
-import variables.EntityAnnotation;
 import variables.State;
 
 public class MetaTemplate extends AbstractTemplate<State>implements Serializable {
 
 	private static Logger log = LogManager.getFormatterLogger(MetaTemplate.class.getName());
 
+	/**
+	 * Thresholds of the ratio of entities to tokens in the document.
+	 */
+	private static final double[] RATIO_THRESHOLDS = { 0.01, 0.03, 0.05, 0.1, 0.15, 0.2 };
+	private static final String[] RATIO_BELOW = new String[RATIO_THRESHOLDS.length];
+	private static final String[] RATIO_AT_LEAST = new String[RATIO_THRESHOLDS.length];
+
+	static {
+		for (int i = 0; i < RATIO_THRESHOLDS.length; i++) {
+			RATIO_BELOW[i] = "ANNOTATION_TO_TOKEN_RATIO<" + RATIO_THRESHOLDS[i];
+			RATIO_AT_LEAST[i] = "ANNOTATION_TO_TOKEN_RATIO>=" + RATIO_THRESHOLDS[i];
+		}
+	}
+
+	private FeatureIndex featureIndex;
+	private transient volatile SpanFeatureCache featureCache;
+
+	public MetaTemplate() {
+		this(new FeatureIndex());
+	}
+
+	public MetaTemplate(FeatureIndex featureIndex) {
+		this.featureIndex = featureIndex;
+	}
+
+	/**
+	 * Computes the features of the single document-level factor from the
+	 * entity type histogram of the state. The co-occurrence features are
+	 * derived from the counts instead of all pairs of entities: two different
+	 * types co-occur if both are present, a type co-occurs with itself if it
+	 * has at least two entities. The costs are therefore quadratic in the
+	 * number of types and independent of the number of entities and tokens.
+	 * 
+	 * The features only depend on the number of ratio thresholds that are
+	 * reached, the present types and whether each type has several entities.
+	 * They are cached by these properties, so that most proposals only need to
+	 * build the key, which is linear in the number of types.
+	 */
 	@Override
 	public void computeFactor(State state, AbstractFactor abstractFactor) {
 		if (abstractFactor instanceof UnorderedVariablesFactor) {
 			UnorderedVariablesFactor factor = (UnorderedVariablesFactor) abstractFactor;
-			Vector featureVector = new Vector();
-
-			double ratio = ((double) state.getEntities().size()) / state.getDocument().getTokens().size();
-			featureVector.set("ANNOTATION_TO_TOKEN_RATIO<0.01", ratio < 0.01 ? 1.0 : 0.0);
-			featureVector.set("ANNOTATION_TO_TOKEN_RATIO<0.03", ratio < 0.03 ? 1.0 : 0.0);
-			featureVector.set("ANNOTATION_TO_TOKEN_RATIO<0.05", ratio < 0.05 ? 1.0 : 0.0);
-			featureVector.set("ANNOTATION_TO_TOKEN_RATIO<0.1", ratio < 0.1 ? 1.0 : 0.0);
-			featureVector.set("ANNOTATION_TO_TOKEN_RATIO<0.15", ratio < 0.15 ? 1.0 : 0.0);
-			featureVector.set("ANNOTATION_TO_TOKEN_RATIO<0.2", ratio < 0.2 ? 1.0 : 0.0);
-
-			featureVector.set("ANNOTATION_TO_TOKEN_RATIO>=0.01", ratio >= 0.01 ? 1.0 : 0.0);
-			featureVector.set("ANNOTATION_TO_TOKEN_RATIO>=0.03", ratio >= 0.03 ? 1.0 : 0.0);
-			featureVector.set("ANNOTATION_TO_TOKEN_RATIO>=0.05", ratio >= 0.05 ? 1.0 : 0.0);
-			featureVector.set("ANNOTATION_TO_TOKEN_RATIO>=0.1", ratio >= 0.1 ? 1.0 : 0.0);
-			featureVector.set("ANNOTATION_TO_TOKEN_RATIO>=0.15", ratio >= 0.15 ? 1.0 : 0.0);
-			featureVector.set("ANNOTATION_TO_TOKEN_RATIO>=0.2", ratio >= 0.2 ? 1.0 : 0.0);
-
-			List<EntityAnnotation> entities = new ArrayList<>(state.getEntities());
-			for (int i = 0; i < entities.size(); i++) {
-				EntityAnnotation t1 = entities.get(i);
-				for (int j = i + 1; j < entities.size(); j++) {
-					EntityAnnotation t2 = entities.get(j);
-					String text1 = null;
-					String text2 = null;
-					if (t1.getType().getName().compareTo(t2.getType().getName()) < 0) {
-						text1 = t1.getType().getName();
-						text2 = t2.getType().getName();
-					} else {
-						text1 = t2.getType().getName();
-						text2 = t1.getType().getName();
-					}
-					featureVector.set("TYPE=" + text1 + "_AND_TYPE=" + text2 + "_CO-OCCUR", 1.0);
-				}
+			Multiset<String> typeCounts = state.getEntityTypeCounts();
+
+			double ratio = ((double) typeCounts.size()) / state.getDocument().getTokens().size();
+			int reachedThresholds = 0;
+			while (reachedThresholds < RATIO_THRESHOLDS.length && ratio >= RATIO_THRESHOLDS[reachedThresholds]) {
+				reachedThresholds++;
 			}
 
-			factor.setFeatures(featureVector);
+			List<String> types = new ArrayList<>(typeCounts.elementSet());
+			Collections.sort(types);
+			List<Object> key = new ArrayList<>(2 * types.size() + 1);
+			key.add(reachedThresholds);
+			for (String type : types) {
+				key.add(type);
+				key.add(typeCounts.count(type) > 1);
+			}
+			int thresholds = reachedThresholds;
+			factor.setFeatures(getFeatureCache().get(key, () -> computeFeatures(thresholds, types, typeCounts)));
 		} else {
 			log.warn("Provided factor with ID %s not of type %s.", abstractFactor.getID(),
-					TokenFactor.class.getSimpleName());
+					UnorderedVariablesFactor.class.getSimpleName());
+		}
+	}
+
+	/**
+	 * Computes the features for the given number of reached ratio thresholds
+	 * and the given sorted types. The returned vector is shared by all states
+	 * with the same key and must not be modified afterwards.
+	 * 
+	 * @param reachedThresholds
+	 * @param types
+	 * @param typeCounts
+	 * @return
+	 */
+	private Vector computeFeatures(int reachedThresholds, List<String> types, Multiset<String> typeCounts) {
+		IndexedVector featureVector = new IndexedVector();
+		for (int i = 0; i < RATIO_THRESHOLDS.length; i++) {
+			featureVector.set(featureIndex.getID(RATIO_BELOW[i]), i >= reachedThresholds ? 1.0 : 0.0);
+		}
+		for (int i = 0; i < RATIO_THRESHOLDS.length; i++) {
+			featureVector.set(featureIndex.getID(RATIO_AT_LEAST[i]), i < reachedThresholds ? 1.0 : 0.0);
+		}
+
+		for (int i = 0; i < types.size(); i++) {
+			String type1 = types.get(i);
+			if (typeCounts.count(type1) > 1) {
+				featureVector.set(featureIndex.getID("TYPE=", type1, "_AND_TYPE=", type1, "_CO-OCCUR"), 1.0);
+			}
+			for (int j = i + 1; j < types.size(); j++) {
+				String type2 = types.get(j);
+				featureVector.set(featureIndex.getID("TYPE=", type1, "_AND_TYPE=", type2, "_CO-OCCUR"), 1.0);
+			}
 		}
+		return featureVector.toVector(featureIndex);
 	}
 
+	public SpanFeatureCache getFeatureCache() {
+		SpanFeatureCache cache = featureCache;
+		if (cache == null) {
+			cache = new SpanFeatureCache();
+			featureCache = cache;
+		}
+		return cache;
+	}
+
+	/**
+	 * Generates a single factor for the whole document that covers all
+	 * entities of the state.
+	 */
 	@Override
 	protected Set<AbstractFactor> generateFactors(State state) {
 		Set<AbstractFactor> factors = new HashSet<>();
-		for (int i = 0; i < state.getDocument().getTokens().size(); i++) {
-			factors.add(new UnorderedVariablesFactor(this, state.getEntityIDs()));
-		}
+		factors.add(new UnorderedVariablesFactor(this, new HashSet<>(state.getEntityIDs())));
 		return factors;
 	}
 
+	public FeatureIndex getFeatureIndex() {
+		return featureIndex;
+	}
+
 }
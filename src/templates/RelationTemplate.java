@@ -2,31 +2,49 @@ package templates;
 
 import java.io.Serializable;
 import java.util.HashSet;
-import java.util.Map.Entry;
 import java.util.Set;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 
 import changes.StateChange;
+import corpus.Document;
 import factors.AbstractFactor;
 import factors.EntityAndArgumentFactor;
 import learning.Vector;
-import utility.VariableID;
 import variables.ArgumentRole;
 import variables.EntityAnnotation;
 import variables.EntityType;
 import variables.State;
 
+/**
+ * Computes a factor per argument of an entity. Its features only depend on the
+ * document, the spans and types of the entity and the argument and the role of
+ * the argument. They are therefore cached by these properties, so that only
+ * the arguments of changed entities need to be computed for a proposal.
+ */
 public class RelationTemplate extends AbstractTemplate<State>implements Serializable {
 
 	private static Logger log = LogManager.getFormatterLogger(RelationTemplate.class.getName());
 
 	public final Set<StateChange> relevantChanges = Sets.newHashSet(StateChange.values());
 
+	private static final String ENTITY_TYPE = "ENTITY_TYPE=";
+	private static final String[] DISTANCE_GREATER = { ">0", ">1", ">2", ">3" };
+
+	private FeatureIndex featureIndex;
+	private transient volatile SpanFeatureCache featureCache;
+
+	public RelationTemplate() {
+		this(new FeatureIndex());
+	}
+
+	public RelationTemplate(FeatureIndex featureIndex) {
+		this.featureIndex = featureIndex;
+	}
+
 	@Override
 	public void computeFactor(State state, AbstractFactor abstractFactor) {
 		// TODO features on unannotated tokens (thus, type/name = "null") might
@@ -37,44 +55,8 @@ public class RelationTemplate extends AbstractTemplate<State>implements Serializ
 			EntityAnnotation argEntity = state.getEntity(factor.getArgumentEntityID());
 			ArgumentRole argRole = factor.getArgumentRole();
 
-			EntityType argType = argEntity.getType();
-
-			log.debug("%s: Add features to entity %s (\"%s\"):", this.getClass().getSimpleName(), mainEntity.getID(),
-					mainEntity.getText());
-
-			Vector featureVector = new Vector();
-
-			EntityType entityType = mainEntity.getType();
-			String entityAsText = mainEntity.getText();
-
-			/*
-			 * The next few features are always present for each individual
-			 * token, thus, they always have a value of 1
-			 */
-			featureVector.set("ENTITY_TYPE=" + entityType.getName() + " & ARG_TYPE=" + argType.getName(), 1.0);
-			featureVector.set("ENTITY_TYPE=" + entityType.getName() + " & ARG_ROLE=" + argRole, 1.0);
-			featureVector.set("ENTITY_TYPE=" + entityType.getName() + " & ARG_TYPE=" + argType.getName()
-					+ " & ARG_ROLE=" + argRole, 1.0);
-
-			
-			for (int i = 0; i < 4; i++) {
-				double distanceFeatureValue = Math.abs(distance(mainEntity, argEntity)) > i ? 1 : 0;
-				featureVector.set("DISTANCE_FROM_ENTITY=" + entityAsText + "_TO_ARGUMENT_ROLE=" + argRole + ">" + i,
-						distanceFeatureValue);
-				// featureVector.set(
-				// "DISTANCE_FROM_ENTITY_TO_ARGUMENT_ROLE="
-				// + argRole + ">" + i,
-				// distanceFeatureValue);
-			}
-
-			featureVector.set("ENTITY=" + entityAsText + "_BEFORE_ARGUMENT_ROLE=" + argRole,
-					isBefore(mainEntity, argEntity));
-			featureVector.set("ENTITY_BEFORE_ARGUMENT_ROLE=" + argRole, isBefore(mainEntity, argEntity));
-
-			featureVector.set("ENTITY=" + entityAsText + "_AFTER_ARGUMENT_ROLE=" + argRole,
-					isAfter(mainEntity, argEntity));
-			featureVector.set("ENTITY_AFTER_ARGUMENT_ROLE=" + argRole, isAfter(mainEntity, argEntity));
-
+			Vector featureVector = getFeatureCache().get(new RelationKey(state, mainEntity, argEntity, argRole),
+					() -> computeFeatures(mainEntity, argEntity, argRole));
 			log.debug("%s: Features for entity %s (\"%s\"): %s", this.getClass().getSimpleName(), mainEntity.getID(),
 					mainEntity.getText(), featureVector);
 			factor.setFeatures(featureVector);
@@ -84,6 +66,56 @@ public class RelationTemplate extends AbstractTemplate<State>implements Serializ
 
 	}
 
+	/**
+	 * Computes the features of the given argument of the main entity. The
+	 * returned vector is shared by all factors with the same spans, types and
+	 * role and must not be modified afterwards.
+	 * 
+	 * @param mainEntity
+	 * @param argEntity
+	 * @param argRole
+	 * @return
+	 */
+	private Vector computeFeatures(EntityAnnotation mainEntity, EntityAnnotation argEntity, ArgumentRole argRole) {
+		EntityType argType = argEntity.getType();
+
+		IndexedVector featureVector = new IndexedVector();
+
+		String entityType = mainEntity.getType().getName();
+		String entityAsText = mainEntity.getText();
+		String role = String.valueOf(argRole);
+
+		/*
+		 * The next few features are always present for each individual
+		 * token, thus, they always have a value of 1
+		 */
+		featureVector.set(featureIndex.getID(ENTITY_TYPE, entityType, " & ARG_TYPE=", argType.getName()), 1.0);
+		featureVector.set(featureIndex.getID(ENTITY_TYPE, entityType, " & ARG_ROLE=", role), 1.0);
+		featureVector.set(featureIndex.getID(ENTITY_TYPE, entityType, " & ARG_TYPE=", argType.getName(),
+				" & ARG_ROLE=", role), 1.0);
+
+		int distance = Math.abs(distance(mainEntity, argEntity));
+		for (int i = 0; i < DISTANCE_GREATER.length; i++) {
+			double distanceFeatureValue = distance > i ? 1 : 0;
+			featureVector.set(featureIndex.getID("DISTANCE_FROM_ENTITY=", entityAsText, "_TO_ARGUMENT_ROLE=", role,
+					DISTANCE_GREATER[i]), distanceFeatureValue);
+			// featureVector.set(
+			// "DISTANCE_FROM_ENTITY_TO_ARGUMENT_ROLE="
+			// + argRole + ">" + i,
+			// distanceFeatureValue);
+		}
+
+		double before = isBefore(mainEntity, argEntity);
+		double after = isAfter(mainEntity, argEntity);
+		featureVector.set(featureIndex.getID("ENTITY=", entityAsText, "_BEFORE_ARGUMENT_ROLE=", role), before);
+		featureVector.set(featureIndex.getID("ENTITY_BEFORE_ARGUMENT_ROLE=", role), before);
+
+		featureVector.set(featureIndex.getID("ENTITY=", entityAsText, "_AFTER_ARGUMENT_ROLE=", role), after);
+		featureVector.set(featureIndex.getID("ENTITY_AFTER_ARGUMENT_ROLE=", role), after);
+
+		return featureVector.toVector(featureIndex);
+	}
+
 	private double isBefore(EntityAnnotation e1, EntityAnnotation e2) {
 		return e1.getEndTokenIndex() <= e2.getBeginTokenIndex() ? 1.0 : 0;
 	}
@@ -107,11 +139,79 @@ public class RelationTemplate extends AbstractTemplate<State>implements Serializ
 	protected Set<AbstractFactor> generateFactors(State state) {
 		Set<AbstractFactor> factors = new HashSet<>();
 		for (EntityAnnotation entity : state.getEntities()) {
-			Multimap<ArgumentRole, VariableID> arguments = entity.getReadOnlyArguments();
-			for (Entry<ArgumentRole, VariableID> a : arguments.entries()) {
-				factors.add(new EntityAndArgumentFactor(this, entity.getID(), a.getKey(), a.getValue()));
+			for (int i = 0; i < entity.getNumberOfArguments(); i++) {
+				factors.add(new EntityAndArgumentFactor(this, entity.getID(), entity.getArgumentRole(i),
+						entity.getArgumentID(i)));
 			}
 		}
 		return factors;
 	}
+
+	public FeatureIndex getFeatureIndex() {
+		return featureIndex;
+	}
+
+	public SpanFeatureCache getFeatureCache() {
+		SpanFeatureCache cache = featureCache;
+		if (cache == null) {
+			cache = new SpanFeatureCache();
+			featureCache = cache;
+		}
+		return cache;
+	}
+
+	/**
+	 * The properties that the features of an argument depend on.
+	 */
+	private static class RelationKey {
+		private Document<State> document;
+		private int mainBegin;
+		private int mainEnd;
+		private String mainType;
+		private int argBegin;
+		private int argEnd;
+		private String argType;
+		private String role;
+
+		public RelationKey(State state, EntityAnnotation mainEntity, EntityAnnotation argEntity,
+				ArgumentRole argRole) {
+			this.document = state.getDocument();
+			this.mainBegin = mainEntity.getBeginTokenIndex();
+			this.mainEnd = mainEntity.getEndTokenIndex();
+			this.mainType = mainEntity.getType().getName();
+			this.argBegin = argEntity.getBeginTokenIndex();
+			this.argEnd = argEntity.getEndTokenIndex();
+			this.argType = argEntity.getType().getName();
+			this.role = String.valueOf(argRole);
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + System.identityHashCode(document);
+			result = prime * result + mainBegin;
+			result = prime * result + mainEnd;
+			result = prime * result + mainType.hashCode();
+			result = prime * result + argBegin;
+			result = prime * result + argEnd;
+			result = prime * result + argType.hashCode();
+			result = prime * result + role.hashCode();
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			RelationKey other = (RelationKey) obj;
+			return document == other.document && mainBegin == other.mainBegin && mainEnd == other.mainEnd
+					&& argBegin == other.argBegin && argEnd == other.argEnd && mainType.equals(other.mainType)
+					&& argType.equals(other.argType) && role.equals(other.role);
+		}
+	}
 }
@@ -0,0 +1,188 @@
+package templates;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import corpus.Document;
+import learning.Vector;
+import variables.EntityAnnotation;
+import variables.State;
+
+/**
+ * Caches the feature vectors of templates whose features only depend on the
+ * document, the token span and the type of an entity. Since most entities of a
+ * proposal state are shared with its predecessor, the features of only the
+ * changed entity need to be computed, and features are reused across sampling
+ * steps and epochs as well.
+ * 
+ * The cache holds at most maximumSize vectors and evicts the least recently
+ * used ones. It is split into segments with separate locks, so that it can be
+ * used by concurrent scoring threads. Each template owns its own cache, so a
+ * cache is discarded together with its template. The cached vectors are
+ * shared by all factors of the same span and must not be modified.
+ * 
+ * Templates whose features depend on other properties than a single span can
+ * use the cache with their own keys via get(Object, Supplier).
+ */
+public class SpanFeatureCache {
+
+	public static final int DEFAULT_MAXIMUM_SIZE = 100000;
+	private static final int NUMBER_OF_SEGMENTS = 16;
+
+	private Segment[] segments = new Segment[NUMBER_OF_SEGMENTS];
+	private AtomicLong hits = new AtomicLong();
+	private AtomicLong misses = new AtomicLong();
+	private AtomicLong evictions = new AtomicLong();
+
+	public SpanFeatureCache() {
+		this(DEFAULT_MAXIMUM_SIZE);
+	}
+
+	public SpanFeatureCache(int maximumSize) {
+		int segmentSize = Math.max(1, maximumSize / NUMBER_OF_SEGMENTS);
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = new Segment(segmentSize);
+		}
+	}
+
+	/**
+	 * Returns the cached features of the given entity or computes and caches
+	 * them if they are not present.
+	 * 
+	 * @param state
+	 * @param entity
+	 * @param featureComputation
+	 * @return
+	 */
+	public Vector get(State state, EntityAnnotation entity, Supplier<Vector> featureComputation) {
+		SpanKey key = new SpanKey(state.getDocument(), entity.getBeginTokenIndex(), entity.getEndTokenIndex(),
+				entity.getType().getName());
+		return get(key, featureComputation);
+	}
+
+	/**
+	 * Returns the cached features for the given key or computes and caches
+	 * them if they are not present. The key has to implement equals() and
+	 * hashCode() and needs to cover everything the features depend on.
+	 * 
+	 * @param key
+	 * @param featureComputation
+	 * @return
+	 */
+	public Vector get(Object key, Supplier<Vector> featureComputation) {
+		Segment segment = segments[(key.hashCode() & 0x7fffffff) % segments.length];
+		Vector features;
+		synchronized (segment) {
+			features = segment.get(key);
+		}
+		if (features != null) {
+			hits.incrementAndGet();
+			return features;
+		}
+		misses.incrementAndGet();
+		features = featureComputation.get();
+		synchronized (segment) {
+			segment.put(key, features);
+		}
+		return features;
+	}
+
+	public void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	public long getNumberOfHits() {
+		return hits.get();
+	}
+
+	public long getNumberOfMisses() {
+		return misses.get();
+	}
+
+	public long getNumberOfEvictions() {
+		return evictions.get();
+	}
+
+	public double getHitRate() {
+		long lookups = hits.get() + misses.get();
+		return lookups == 0 ? 0 : (double) hits.get() / lookups;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("SpanFeatureCache [hits=%s, misses=%s, evictions=%s, hit rate=%.3f]", hits.get(),
+				misses.get(), evictions.get(), getHitRate());
+	}
+
+	private class Segment extends LinkedHashMap<Object, Vector> {
+		private int maximumSize;
+
+		public Segment(int maximumSize) {
+			super(16, 0.75f, true);
+			this.maximumSize = maximumSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Object, Vector> eldest) {
+			if (size() > maximumSize) {
+				evictions.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	}
+
+	private static class SpanKey {
+		private Document<State> document;
+		private int beginTokenIndex;
+		private int endTokenIndex;
+		private String type;
+
+		public SpanKey(Document<State> document, int beginTokenIndex, int endTokenIndex, String type) {
+			this.document = document;
+			this.beginTokenIndex = beginTokenIndex;
+			this.endTokenIndex = endTokenIndex;
+			this.type = type;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + System.identityHashCode(document);
+			result = prime * result + beginTokenIndex;
+			result = prime * result + endTokenIndex;
+			result = prime * result + ((type == null) ? 0 : type.hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			SpanKey other = (SpanKey) obj;
+			if (document != other.document)
+				return false;
+			if (beginTokenIndex != other.beginTokenIndex)
+				return false;
+			if (endTokenIndex != other.endTokenIndex)
+				return false;
+			if (type == null) {
+				if (other.type != null)
+					return false;
+			} else if (!type.equals(other.type))
+				return false;
+			return true;
+		}
+	}
+}
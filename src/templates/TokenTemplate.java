@@ -3,47 +3,67 @@ package templates;
 import java.io.Serializable;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import corpus.Document;
+
 import corpus.Token;
+import corpus.TokenShape;
 import factors.AbstractFactor;
 import factors.TokenFactor;
 import learning.Vector;
 import variables.State;
 
+/**
+ * Computes a factor per token. Its features only depend on the token and on
+ * whether the token is covered by an entity. Both possible vectors of a token
+ * are computed at most once per document and reused afterwards.
+ */
 public class TokenTemplate extends AbstractTemplate<State>implements Serializable {
 
 	private static Logger log = LogManager.getFormatterLogger(TokenTemplate.class.getName());
 
-	@Override
-	public void computeFactor(State state, AbstractFactor abstractFactor) {
-		if (abstractFactor instanceof TokenFactor) {
+	private static final int[] AFFIX_LENGTHS = { 2, 3 };
+	private static final String[] TOKEN_WITH_SUFFIX = { "TOKEN_WITH_SUFFIX_2=", "TOKEN_WITH_SUFFIX_3=" };
+	private static final String[] TOKEN_WITH_PREFIX = { "TOKEN_WITH_PREFIX_2=", "TOKEN_WITH_PREFIX_3=" };
+	private static final String HAS_ANNOTATION = "_HAS_ANNOTATION";
 
-			TokenFactor factor = (TokenFactor) abstractFactor;
-			Token token = state.getDocument().getTokens().get(factor.tokenIndex);
-			double hasAnnotation = state.tokenHasAnnotation(factor.tokenIndex) ? 1.0 : 0.0;
+	private FeatureIndex featureIndex;
+	/**
+	 * The features of each document, indexed by 2 * token index + 1 if the
+	 * token is annotated and by 2 * token index otherwise. The keys are weak
+	 * and compared by identity.
+	 */
+	private transient volatile LoadingCache<Document<?>, AtomicReferenceArray<Vector>> featureCache;
 
-			Vector featureVector = new Vector();
+	public TokenTemplate() {
+		this(new FeatureIndex());
+	}
 
-			String tokenPrefix = "TOKEN=" + token.getText() + "_";
-			featureVector.set(tokenPrefix + "HAS_ANNOTATION", hasAnnotation);
+	public TokenTemplate(FeatureIndex featureIndex) {
+		this.featureIndex = featureIndex;
+	}
 
-			int[] suffixLengths = { 2, 3 };
-			for (int i : suffixLengths) {
-				featureVector.set(
-						"TOKEN_WITH_SUFFIX_" + i + "=" + Features.suffix(token.getText(), i) + "_HAS_ANNOTATION",
-						hasAnnotation);
-			}
+	@Override
+	public void computeFactor(State state, AbstractFactor abstractFactor) {
+		if (abstractFactor instanceof TokenFactor) {
 
-			int[] prefixLengths = { 2, 3 };
-			for (int i : prefixLengths) {
-				featureVector.set(
-						"TOKEN_WITH_PREFIX_" + i + "=" + Features.prefix(token.getText(), i) + "_HAS_ANNOTATION",
-						hasAnnotation);
+			TokenFactor factor = (TokenFactor) abstractFactor;
+			boolean hasAnnotation = state.tokenHasAnnotation(factor.tokenIndex);
+			AtomicReferenceArray<Vector> documentFeatures = getFeatureCache().getUnchecked(state.getDocument());
+			int slot = 2 * factor.tokenIndex + (hasAnnotation ? 1 : 0);
+			Vector featureVector = documentFeatures.get(slot);
+			if (featureVector == null) {
+				featureVector = computeFeatures(state.getDocument(), factor.tokenIndex, hasAnnotation ? 1.0 : 0.0);
+				documentFeatures.set(slot, featureVector);
 			}
-
 			factor.setFeatures(featureVector);
 		} else {
 			log.warn("Provided factor with ID %s not of type %s.", abstractFactor.getID(),
@@ -51,6 +71,56 @@ public class TokenTemplate extends AbstractTemplate<State>implements Serializabl
 		}
 	}
 
+	/**
+	 * Computes the features of the given token. The returned vector is shared
+	 * by all factors of this token with the same annotation status and must
+	 * not be modified afterwards.
+	 * 
+	 * @param document
+	 * @param tokenIndex
+	 * @param hasAnnotation
+	 * @return
+	 */
+	private Vector computeFeatures(Document<?> document, int tokenIndex, double hasAnnotation) {
+		Token token = document.getTokens().get(tokenIndex);
+		TokenShape shape = TokenShape.of(document);
+
+		IndexedVector featureVector = new IndexedVector();
+
+		featureVector.set(featureIndex.getID("TOKEN=", token.getText(), HAS_ANNOTATION), hasAnnotation);
+
+		for (int k = 0; k < AFFIX_LENGTHS.length; k++) {
+			featureVector.set(featureIndex.getID(TOKEN_WITH_SUFFIX[k], shape.getSuffix(tokenIndex, AFFIX_LENGTHS[k]),
+					HAS_ANNOTATION), hasAnnotation);
+		}
+
+		for (int k = 0; k < AFFIX_LENGTHS.length; k++) {
+			featureVector.set(featureIndex.getID(TOKEN_WITH_PREFIX[k], shape.getPrefix(tokenIndex, AFFIX_LENGTHS[k]),
+					HAS_ANNOTATION), hasAnnotation);
+		}
+
+		return featureVector.toVector(featureIndex);
+	}
+
+	private LoadingCache<Document<?>, AtomicReferenceArray<Vector>> getFeatureCache() {
+		LoadingCache<Document<?>, AtomicReferenceArray<Vector>> cache = featureCache;
+		if (cache == null) {
+			cache = CacheBuilder.newBuilder().weakKeys()
+					.build(new CacheLoader<Document<?>, AtomicReferenceArray<Vector>>() {
+						@Override
+						public AtomicReferenceArray<Vector> load(Document<?> document) {
+							return new AtomicReferenceArray<>(2 * document.getTokens().size());
+						}
+					});
+			featureCache = cache;
+		}
+		return cache;
+	}
+
+	public FeatureIndex getFeatureIndex() {
+		return featureIndex;
+	}
+
 	@Override
 	protected Set<AbstractFactor> generateFactors(State state) {
 		Set<AbstractFactor> factors = new HashSet<>();
@@ -0,0 +1,57 @@
+package variables;
+
+import java.io.Serializable;
+
+import utility.VariableID;
+
+/**
+ * Describes that the entity with the ID parentID references some other entity
+ * as an argument with the given role. The State uses this class to index the
+ * arguments by their target entities.
+ */
+class ArgumentReference implements Serializable {
+	public final VariableID parentID;
+	public final ArgumentRole role;
+
+	public ArgumentReference(VariableID parentID, ArgumentRole role) {
+		this.parentID = parentID;
+		this.role = role;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((parentID == null) ? 0 : parentID.hashCode());
+		result = prime * result + ((role == null) ? 0 : role.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		ArgumentReference other = (ArgumentReference) obj;
+		if (parentID == null) {
+			if (other.parentID != null)
+				return false;
+		} else if (!parentID.equals(other.parentID))
+			return false;
+		if (role == null) {
+			if (other.role != null)
+				return false;
+		} else if (!role.equals(other.role))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return parentID + ":" + role;
+	}
+
+}
@@ -2,15 +2,22 @@ package variables;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map.Entry;
 
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.Multimap;
 
+import changes.StateChange;
 import corpus.Token;
 import utility.VariableID;
 
 public class EntityAnnotation extends AbstractVariable<State>implements Serializable {
+
+	private static final int DEFAULT_ARGUMENT_CAPACITY = 3;
+
 	/**
 	 * This number specifies the token index (!! not character offset) of the
 	 * first token that this annotation references.
@@ -28,6 +35,11 @@ public class EntityAnnotation extends AbstractVariable<State>implements Serializ
 	protected int originalStart;
 	protected int originalEnd;
 
+	/**
+	 * The state this entity belongs to. Copy-on-write copies of a state share
+	 * the entities of their parent until they modify them. Thus, this state is
+	 * not necessarily the (only) state that contains this entity.
+	 */
 	protected final State state;
 	/**
 	 * This flag can be used to declare an annotation as fixed, so that the
@@ -39,9 +51,20 @@ public class EntityAnnotation extends AbstractVariable<State>implements Serializ
 	 * We need to keep weak references (IDs only) to other entities in order to
 	 * enable an efficient cloning of states and their entities during the
 	 * training phase of the model. The state in which this entity lives offers
-	 * methods to resolve this weak reference.
+	 * methods to resolve this weak reference. The arguments are stored as
+	 * pairs of role and entity ID in two parallel arrays, since most entities
+	 * have at most a handful of arguments. As in a SetMultimap, each pair is
+	 * contained at most once.
 	 */
-	protected Multimap<ArgumentRole, VariableID> arguments;
+	protected ArgumentRole[] argumentRoles;
+	protected VariableID[] argumentIDs;
+	protected int numberOfArguments;
+	/**
+	 * Read-only view on the arguments that is created on demand and discarded
+	 * whenever the arguments change. The view is immutable and can thus be
+	 * shared by copies of this entity.
+	 */
+	private transient ImmutableSetMultimap<ArgumentRole, VariableID> argumentView;
 
 	public EntityAnnotation(State state, VariableID id, EntityType entityType,
 			Multimap<ArgumentRole, VariableID> arguments, int start, int end) {
@@ -50,7 +73,13 @@ public class EntityAnnotation extends AbstractVariable<State>implements Serializ
 		this.type = entityType;
 		this.beginTokenIndex = start;
 		this.endTokenIndex = end;
-		this.arguments = arguments;
+		this.argumentRoles = new ArgumentRole[Math.max(arguments.size(), DEFAULT_ARGUMENT_CAPACITY)];
+		this.argumentIDs = new VariableID[argumentRoles.length];
+		for (Entry<ArgumentRole, VariableID> argument : arguments.entries()) {
+			if (!containsArgument(argument.getKey(), argument.getValue())) {
+				appendArgument(argument.getKey(), argument.getValue());
+			}
+		}
 	}
 
 	public EntityAnnotation(State state, EntityAnnotation e) {
@@ -59,7 +88,10 @@ public class EntityAnnotation extends AbstractVariable<State>implements Serializ
 		this.type = e.type;
 		this.beginTokenIndex = e.beginTokenIndex;
 		this.endTokenIndex = e.endTokenIndex;
-		this.arguments = HashMultimap.create(e.arguments);
+		this.argumentRoles = Arrays.copyOf(e.argumentRoles, e.argumentRoles.length);
+		this.argumentIDs = Arrays.copyOf(e.argumentIDs, e.argumentIDs.length);
+		this.numberOfArguments = e.numberOfArguments;
+		this.argumentView = e.argumentView;
 		this.originalText = e.originalText;
 		this.originalStart = e.originalStart;
 		this.originalEnd = e.originalEnd;
@@ -100,8 +132,74 @@ public class EntityAnnotation extends AbstractVariable<State>implements Serializ
 		return endTokenIndex;
 	}
 
+	/**
+	 * Returns an immutable view on the arguments of this entity. The view is
+	 * cached until the arguments of this entity change, so that repeated calls
+	 * do not create any objects. Iterating over the arguments with
+	 * getNumberOfArguments(), getArgumentRole(int) and getArgumentID(int) is
+	 * even cheaper.
+	 * 
+	 * @return
+	 */
 	public Multimap<ArgumentRole, VariableID> getReadOnlyArguments() {
-		return HashMultimap.create(arguments);
+		if (argumentView == null) {
+			ImmutableSetMultimap.Builder<ArgumentRole, VariableID> builder = ImmutableSetMultimap.builder();
+			for (int i = 0; i < numberOfArguments; i++) {
+				builder.put(argumentRoles[i], argumentIDs[i]);
+			}
+			argumentView = builder.build();
+		}
+		return argumentView;
+	}
+
+	public int getNumberOfArguments() {
+		return numberOfArguments;
+	}
+
+	/**
+	 * Returns the role of the i-th argument of this entity.
+	 * 
+	 * @param i
+	 * @return
+	 */
+	public ArgumentRole getArgumentRole(int i) {
+		return argumentRoles[i];
+	}
+
+	/**
+	 * Returns the ID of the entity that fills the i-th argument of this
+	 * entity.
+	 * 
+	 * @param i
+	 * @return
+	 */
+	public VariableID getArgumentID(int i) {
+		return argumentIDs[i];
+	}
+
+	public boolean containsArgument(ArgumentRole role, VariableID entityID) {
+		return indexOfArgument(role, entityID) >= 0;
+	}
+
+	private int indexOfArgument(ArgumentRole role, VariableID entityID) {
+		for (int i = 0; i < numberOfArguments; i++) {
+			if (argumentRoles[i].equals(role) && argumentIDs[i].equals(entityID)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void appendArgument(ArgumentRole role, VariableID entityID) {
+		if (numberOfArguments == argumentRoles.length) {
+			int capacity = Math.max(DEFAULT_ARGUMENT_CAPACITY, 2 * numberOfArguments);
+			argumentRoles = Arrays.copyOf(argumentRoles, capacity);
+			argumentIDs = Arrays.copyOf(argumentIDs, capacity);
+		}
+		argumentRoles[numberOfArguments] = role;
+		argumentIDs[numberOfArguments] = entityID;
+		numberOfArguments++;
+		argumentView = null;
 	}
 
 	/**
@@ -127,6 +225,11 @@ public class EntityAnnotation extends AbstractVariable<State>implements Serializ
 	}
 
 	public void setOriginalText(String originalText) {
+		state.checkNotFrozen();
+		if (state.isRecordingChanges()) {
+			String previousOriginalText = this.originalText;
+			state.recordUndo(() -> setOriginalText(previousOriginalText));
+		}
 		this.originalText = originalText;
 	}
 
@@ -135,6 +238,11 @@ public class EntityAnnotation extends AbstractVariable<State>implements Serializ
 	}
 
 	public void setOriginalStart(int originalStart) {
+		state.checkNotFrozen();
+		if (state.isRecordingChanges()) {
+			int previousOriginalStart = this.originalStart;
+			state.recordUndo(() -> setOriginalStart(previousOriginalStart));
+		}
 		this.originalStart = originalStart;
 	}
 
@@ -143,11 +251,24 @@ public class EntityAnnotation extends AbstractVariable<State>implements Serializ
 	}
 
 	public void setOriginalEnd(int originalEnd) {
+		state.checkNotFrozen();
+		if (state.isRecordingChanges()) {
+			int previousOriginalEnd = this.originalEnd;
+			state.recordUndo(() -> setOriginalEnd(previousOriginalEnd));
+		}
 		this.originalEnd = originalEnd;
 	}
 
 	public void setType(EntityType type) {
+		state.checkNotFrozen();
+		if (state.isRecordingChanges()) {
+			EntityType previousType = this.type;
+			state.recordUndo(() -> setType(previousType));
+		}
+		state.beforeEntityChange(this);
 		this.type = type;
+		state.afterEntityChange(this);
+		state.markChanged(id, StateChange.CHANGE_TYPE);
 	}
 
 	/**
@@ -158,6 +279,11 @@ public class EntityAnnotation extends AbstractVariable<State>implements Serializ
 	 * @param b
 	 */
 	public void setPriorKnowledge(boolean b) {
+		state.checkNotFrozen();
+		if (state.isRecordingChanges()) {
+			boolean previousPriorKnowledge = this.isPriorKnowledge;
+			state.recordUndo(() -> setPriorKnowledge(previousPriorKnowledge));
+		}
 		this.isPriorKnowledge = b;
 	}
 
@@ -166,28 +292,74 @@ public class EntityAnnotation extends AbstractVariable<State>implements Serializ
 	}
 
 	public void setBeginTokenIndex(int beginTokenIndex) {
+		state.checkNotFrozen();
+		if (state.isRecordingChanges()) {
+			int previousBeginTokenIndex = this.beginTokenIndex;
+			state.recordUndo(() -> setBeginTokenIndex(previousBeginTokenIndex));
+		}
 		// TODO this handling of changes is not perfectly efficient and allows
 		// errors and inconsistencies if applied wrongly
+		state.beforeEntityChange(this);
 		state.removeFromTokenToEntityMapping(this);
 		this.beginTokenIndex = beginTokenIndex;
 		state.addToTokenToEntityMapping(this);
+		state.afterEntityChange(this);
+		state.markChanged(id, StateChange.CHANGE_BOUNDARIES);
 	}
 
 	public void setEndTokenIndex(int endTokenIndex) {
+		state.checkNotFrozen();
+		if (state.isRecordingChanges()) {
+			int previousEndTokenIndex = this.endTokenIndex;
+			state.recordUndo(() -> setEndTokenIndex(previousEndTokenIndex));
+		}
 		// TODO this handling of changes is not perfectly efficient and allows
 		// errors and inconsistencies if applied wrongly
 
+		state.beforeEntityChange(this);
 		state.removeFromTokenToEntityMapping(this);
 		this.endTokenIndex = endTokenIndex;
 		state.addToTokenToEntityMapping(this);
+		state.afterEntityChange(this);
+		state.markChanged(id, StateChange.CHANGE_BOUNDARIES);
 	}
 
 	public void addArgument(ArgumentRole role, VariableID entityID) {
-		arguments.put(role, entityID);
+		state.checkNotFrozen();
+		if (containsArgument(role, entityID)) {
+			return;
+		}
+		appendArgument(role, entityID);
+		if (state.containsEntity(this)) {
+			state.addArgumentReference(id, role, entityID);
+			state.updateArgumentHash(this, role, entityID, true);
+			state.markChanged(id, StateChange.ADD_ARGUMENT);
+		}
+		if (state.isRecordingChanges()) {
+			state.recordUndo(() -> removeArgument(role, entityID));
+		}
 	}
 
 	public void removeArgument(ArgumentRole role, VariableID entity) {
-		arguments.remove(role, entity);
+		state.checkNotFrozen();
+		int i = indexOfArgument(role, entity);
+		if (i < 0) {
+			return;
+		}
+		numberOfArguments--;
+		System.arraycopy(argumentRoles, i + 1, argumentRoles, i, numberOfArguments - i);
+		System.arraycopy(argumentIDs, i + 1, argumentIDs, i, numberOfArguments - i);
+		argumentRoles[numberOfArguments] = null;
+		argumentIDs[numberOfArguments] = null;
+		argumentView = null;
+		if (state.containsEntity(this)) {
+			state.removeArgumentReference(id, role, entity);
+			state.updateArgumentHash(this, role, entity, false);
+			state.markChanged(id, StateChange.REMOVE_ARGUMENT);
+		}
+		if (state.isRecordingChanges()) {
+			state.recordUndo(() -> addArgument(role, entity));
+		}
 	}
 
 	public String getText() {
@@ -211,12 +383,12 @@ public class EntityAnnotation extends AbstractVariable<State>implements Serializ
 	@Override
 	public String toString() {
 		return "EntityAnnotation [id=" + id + ", begin=" + beginTokenIndex + ", end=" + endTokenIndex + ", type="
-				+ type.getName() + ", arguments=" + arguments + "]";
+				+ type.getName() + ", arguments=" + getReadOnlyArguments() + "]";
 	}
 
 	public String toDetailedString() {
 		return "EntityAnnotation [id=" + id + ", begin=" + beginTokenIndex + ", end=" + endTokenIndex + " => \""
-				+ getText() + "\", type=" + type.getName() + ", arguments=" + arguments + "]";
+				+ getText() + "\", type=" + type.getName() + ", arguments=" + getReadOnlyArguments() + "]";
 	}
 
 }
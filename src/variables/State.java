@@ -2,22 +2,32 @@ package variables;
 
 import java.io.Serializable;
 import java.text.DecimalFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import com.google.common.collect.Multimap;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Multisets;
+import com.google.common.collect.SetMultimap;
 
+import changes.StateChange;
 import corpus.Document;
 import corpus.Token;
 import factors.FactorGraph;
@@ -35,17 +45,73 @@ public class State extends AbstractState implements Serializable {
 	 * using a Map is sensible to enable an efficient access to the entities.
 	 */
 	private Map<VariableID, EntityAnnotation> entities = new HashMap<>();
-	// TODO Maybe not really needed anymore
-	private Map<Integer, Set<VariableID>> tokenToEntities = new HashMap<>();
+	/**
+	 * Index from token positions to the entities that cover these tokens.
+	 */
+	private TokenEntityIndex tokenToEntities;
+	/**
+	 * Reverse index of all arguments in this state. Maps each entity ID to the
+	 * entities (and roles) that reference this entity as an argument.
+	 */
+	private SetMultimap<VariableID, ArgumentReference> argumentReferences = HashMultimap.create();
+	/**
+	 * Number of entities per entity type name. The histogram is updated with
+	 * every change of the entities, so that document-level templates do not
+	 * need to iterate over all entities.
+	 */
+	private Multiset<String> entityTypeCounts = HashMultiset.create();
 
 	private AtomicInteger entityIDIndex = new AtomicInteger();
+	/**
+	 * Hash of the annotations in this state that ignores the IDs of the
+	 * entities. It is updated with each change to the entities of this state.
+	 * See StructuralHash for details.
+	 */
+	private long structuralHash = 0;
+	/**
+	 * A state that was created as a copy-on-write copy of another state shares
+	 * the entity map and the token index with its parent until it changes one
+	 * of them. These flags state whether the respective structure still
+	 * belongs to another state and needs to be copied before it is modified.
+	 */
+	private boolean sharedEntities = false;
+	private boolean sharedTokenToEntities = false;
+	private boolean sharedArgumentReferences = false;
+	private boolean sharedEntityTypeCounts = false;
+	/**
+	 * A state becomes frozen as soon as a copy-on-write copy is derived from
+	 * it, since the derived states read the entities of this state. A frozen
+	 * state must not be changed anymore.
+	 */
+	private boolean frozen = false;
+	/**
+	 * While changes are recorded, every modification of this state and its
+	 * entities pushes an operation onto this log that reverts it. This allows
+	 * to apply a proposal to a state, score it and undo it again, without
+	 * creating a new state for each proposal.
+	 */
+	private transient Deque<Runnable> undoLog;
+	private int recordedEntityIDIndex;
+	private double recordedModelScore;
+	private double recordedObjectiveScore;
+	/**
+	 * The System.nanoTime() until which the sampling of this state's document
+	 * should be finished, or 0 if there is no deadline. The deadline is passed
+	 * on to all copies of this state, so that the explorers can check it.
+	 */
+	private transient long deadlineNanoTime = 0;
 	/**
 	 * The state needs to keep track of the changes that were made to its
 	 * entities in order to allow for efficient computation of factors and their
 	 * features. Note: The changes are not stored in the Entity object since it
 	 * is more efficient to just clear this map instead of iterating over all
 	 * entities and reset a field in order to mark all entities as unchanged.
+	 * The map contains the changes since this state was copied from its
+	 * parent.
 	 */
+	private transient SetMultimap<VariableID, StateChange> changedEntities;
+	private transient boolean undoingChanges = false;
+
 	private Document<State> document;
 
 	private State() {
@@ -59,15 +125,44 @@ public class State extends AbstractState implements Serializable {
 	 * @param state
 	 */
 	public State(State state) {
+		this(state, false);
+	}
+
+	/**
+	 * This Copy Constructor creates a copy of the given state. If copyOnWrite
+	 * is false, the copy is an exact deep copy including all internal
+	 * annotations. Otherwise, the new state shares all entities and the token
+	 * index with the given state and only copies an entity when it is modified
+	 * via getMutableEntity(). In this case, the given state is frozen and must
+	 * not be modified anymore.
+	 * 
+	 * @param state
+	 * @param copyOnWrite
+	 */
+	public State(State state, boolean copyOnWrite) {
 		this();
 		this.entityIDIndex = new AtomicInteger(state.entityIDIndex.get());
 		this.document = state.document;
 		this.factorGraph = new FactorGraph(state.factorGraph);
-		for (EntityAnnotation e : state.entities.values()) {
-			this.entities.put(e.getID(), new EntityAnnotation(this, e));
-		}
-		for (Entry<Integer, Set<VariableID>> e : state.tokenToEntities.entrySet()) {
-			this.tokenToEntities.put(e.getKey(), new HashSet<VariableID>(e.getValue()));
+		this.structuralHash = state.structuralHash;
+		this.deadlineNanoTime = state.deadlineNanoTime;
+		if (copyOnWrite) {
+			state.frozen = true;
+			this.entities = state.entities;
+			this.tokenToEntities = state.tokenToEntities;
+			this.argumentReferences = state.argumentReferences;
+			this.entityTypeCounts = state.entityTypeCounts;
+			this.sharedEntities = true;
+			this.sharedTokenToEntities = true;
+			this.sharedArgumentReferences = true;
+			this.sharedEntityTypeCounts = true;
+		} else {
+			for (EntityAnnotation e : state.entities.values()) {
+				this.entities.put(e.getID(), new EntityAnnotation(this, e));
+			}
+			this.tokenToEntities = new TokenEntityIndex(state.tokenToEntities);
+			this.argumentReferences = HashMultimap.create(state.argumentReferences);
+			this.entityTypeCounts = HashMultiset.create(state.entityTypeCounts);
 		}
 		this.modelScore = state.modelScore;
 		this.objectiveScore = state.objectiveScore;
@@ -76,6 +171,7 @@ public class State extends AbstractState implements Serializable {
 	public State(Document<State> document) {
 		this();
 		this.document = document;
+		this.tokenToEntities = new TokenEntityIndex(document != null ? document.getTokens().size() : 0);
 	}
 
 	public Document<State> getDocument() {
@@ -84,28 +180,69 @@ public class State extends AbstractState implements Serializable {
 
 	public void addEntity(EntityAnnotation entity) {
 		log.debug("State %s: ADD new annotation: %s", this.getID(), entity);
+		checkNotFrozen();
+		ensureOwnEntities();
+		EntityAnnotation replacedEntity = entities.get(entity.getID());
+		if (replacedEntity != null) {
+			structuralHash -= structuralHashOf(replacedEntity);
+			countEntityType(replacedEntity, -1);
+		}
 		entities.put(entity.getID(), entity);
+		if (replacedEntity != null) {
+			removeFromTokenToEntityMapping(replacedEntity);
+			removeArgumentReferences(replacedEntity);
+			if (isRecordingChanges()) {
+				recordUndo(() -> addEntity(replacedEntity));
+			}
+		} else {
+			if (isRecordingChanges()) {
+				recordUndo(() -> removeEntity(entity.getID()));
+			}
+		}
 		addToTokenToEntityMapping(entity);
-		// changedEntities.put(entity.getID(), StateChange.ADD_ANNOTATION);
+		addArgumentReferences(entity);
+		structuralHash += structuralHashOf(entity);
+		countEntityType(entity, 1);
+		markChanged(entity.getID(), StateChange.ADD_ANNOTATION);
 	}
 
 	public void removeEntity(EntityAnnotation entity) {
 		log.debug("State %s: REMOVE annotation: %s", this.getID(), entity);
-		entities.remove(entity.getID());
+		checkNotFrozen();
+		ensureOwnEntities();
+		if (containsEntity(entity)) {
+			structuralHash -= structuralHashOf(entity);
+			countEntityType(entity, -1);
+		}
+		EntityAnnotation removedEntity = entities.remove(entity.getID());
 		// entities.put(entity.getID(), entity);
 		removeFromTokenToEntityMapping(entity);
+		if (removedEntity != null) {
+			removeArgumentReferences(removedEntity);
+			if (isRecordingChanges()) {
+				recordUndo(() -> addEntity(removedEntity));
+			}
+		}
 		removeReferencingArguments(entity);
-		// changedEntities.put(entity.getID(), StateChange.REMOVE_ANNOTATION);
+		markChanged(entity.getID(), StateChange.REMOVE_ANNOTATION);
 	}
 
 	public void removeEntity(VariableID entityID) {
 		EntityAnnotation entity = getEntity(entityID);
 		if (entity != null) {
 			log.debug("State %s: REMOVE annotation: %s", this.getID(), entity);
+			checkNotFrozen();
+			ensureOwnEntities();
+			structuralHash -= structuralHashOf(entity);
+			countEntityType(entity, -1);
 			entities.remove(entityID);
 			removeFromTokenToEntityMapping(entity);
+			removeArgumentReferences(entity);
+			if (isRecordingChanges()) {
+				recordUndo(() -> addEntity(entity));
+			}
 			removeReferencingArguments(entity);
-			// changedEntities.put(entityID, StateChange.REMOVE_ANNOTATION);
+			markChanged(entityID, StateChange.REMOVE_ANNOTATION);
 		} else {
 			log.warn("Cannot remove entity %s. Entity not found!", entityID);
 		}
@@ -136,67 +273,507 @@ public class State extends AbstractState implements Serializable {
 		return entities.get(id);
 	}
 
+	/**
+	 * Returns the entity with the given ID so that it can be modified. If this
+	 * state is a copy-on-write copy and the entity is still shared with the
+	 * parent state, the entity is copied first. Entities that reference the
+	 * returned entity are rebound to this state as well, so that their
+	 * arguments resolve to the modified entity. Explorers need to use this
+	 * method instead of getEntity() before they change an entity.
+	 * 
+	 * @param id
+	 * @return
+	 */
+	public EntityAnnotation getMutableEntity(VariableID id) {
+		checkNotFrozen();
+		EntityAnnotation entity = entities.get(id);
+		if (entity == null) {
+			return null;
+		}
+		if (entity.state != this) {
+			entity = adoptEntity(entity);
+		}
+		adoptReferencingEntities(id);
+		return entity;
+	}
+
+	/**
+	 * Replaces the shared entity with a copy that belongs to this state.
+	 * 
+	 * @param sharedEntity
+	 * @return
+	 */
+	private EntityAnnotation adoptEntity(EntityAnnotation sharedEntity) {
+		ensureOwnEntities();
+		EntityAnnotation entity = new EntityAnnotation(this, sharedEntity);
+		entities.put(entity.getID(), entity);
+		return entity;
+	}
+
+	/**
+	 * Shared entities resolve their arguments with the state they belong to.
+	 * Thus, all shared entities that reference the given entity need to be
+	 * copied, as soon as this entity is modified in this state.
+	 * 
+	 * @param entityID
+	 */
+	private void adoptReferencingEntities(VariableID entityID) {
+		Set<ArgumentReference> references = argumentReferences.get(entityID);
+		if (references.isEmpty()) {
+			return;
+		}
+		List<EntityAnnotation> referencingEntities = new ArrayList<>();
+		for (ArgumentReference reference : references) {
+			EntityAnnotation e = entities.get(reference.parentID);
+			if (e != null && e.state != this) {
+				referencingEntities.add(e);
+			}
+		}
+		for (EntityAnnotation e : referencingEntities) {
+			adoptEntity(e);
+		}
+	}
+
+	private void ensureOwnEntities() {
+		if (sharedEntities) {
+			entities = new HashMap<>(entities);
+			sharedEntities = false;
+		}
+	}
+
+	private void ensureOwnArgumentReferences() {
+		if (sharedArgumentReferences) {
+			argumentReferences = HashMultimap.create(argumentReferences);
+			sharedArgumentReferences = false;
+		}
+	}
+
+	private void ensureOwnTokenToEntityMapping() {
+		if (sharedTokenToEntities) {
+			tokenToEntities = new TokenEntityIndex(tokenToEntities);
+			sharedTokenToEntities = false;
+		}
+	}
+
+	/**
+	 * True, if copy-on-write copies have been derived from this state. These
+	 * copies share the entities of this state which is why neither the state
+	 * nor its entities may be changed anymore.
+	 * 
+	 * @return
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	/**
+	 * Sets the System.nanoTime() until which the sampling of this state should
+	 * be finished. Copies of this state inherit the deadline. A value of 0
+	 * removes the deadline.
+	 * 
+	 * @param deadlineNanoTime
+	 */
+	public void setDeadline(long deadlineNanoTime) {
+		this.deadlineNanoTime = deadlineNanoTime;
+	}
+
+	public boolean hasDeadline() {
+		return deadlineNanoTime != 0;
+	}
+
+	/**
+	 * True, if this state has a deadline and it has passed.
+	 * 
+	 * @return
+	 */
+	public boolean isPastDeadline() {
+		return deadlineNanoTime != 0 && System.nanoTime() - deadlineNanoTime > 0;
+	}
+
+	/**
+	 * Starts to record all changes to this state, so that they can be reverted
+	 * with undoRecordedChanges(). Changes are recorded until
+	 * stopRecordingChanges() is called.
+	 */
+	public void startRecordingChanges() {
+		checkNotFrozen();
+		undoLog = new ArrayDeque<>();
+		recordedEntityIDIndex = entityIDIndex.get();
+		recordedModelScore = modelScore;
+		recordedObjectiveScore = objectiveScore;
+	}
+
+	/**
+	 * Reverts all changes that were recorded since the last call to
+	 * startRecordingChanges() or undoRecordedChanges(). This includes the
+	 * scores of this state and the counter for generated entity IDs. The
+	 * recording of changes continues afterwards.
+	 */
+	public void undoRecordedChanges() {
+		if (undoLog == null) {
+			log.warn("State %s: Cannot undo changes. Changes are not recorded.", getID());
+			return;
+		}
+		Deque<Runnable> changes = undoLog;
+		undoLog = null;
+		undoingChanges = true;
+		try {
+			while (!changes.isEmpty()) {
+				changes.pop().run();
+			}
+		} finally {
+			undoingChanges = false;
+		}
+		undoLog = changes;
+		entityIDIndex.set(recordedEntityIDIndex);
+		modelScore = recordedModelScore;
+		objectiveScore = recordedObjectiveScore;
+	}
+
+	public void stopRecordingChanges() {
+		undoLog = null;
+	}
+
+	public boolean isRecordingChanges() {
+		return undoLog != null;
+	}
+
+	/**
+	 * Remembers the given operation which reverts a change that was just made
+	 * to this state, in case changes are recorded.
+	 * 
+	 * @param undo
+	 */
+	void recordUndo(Runnable undo) {
+		if (undoLog != null) {
+			undoLog.push(undo);
+		}
+	}
+
+	/**
+	 * Remembers that the given entity was changed in the given way since this
+	 * state was copied. Entities call this method whenever they are modified.
+	 * 
+	 * @param entityID
+	 * @param change
+	 */
+	void markChanged(VariableID entityID, StateChange change) {
+		if (undoingChanges) {
+			// the undo log restores the previous marks itself
+			return;
+		}
+		if (changedEntities == null) {
+			changedEntities = HashMultimap.create();
+		}
+		if (changedEntities.put(entityID, change) && isRecordingChanges()) {
+			recordUndo(() -> changedEntities.remove(entityID, change));
+		}
+	}
+
+	/**
+	 * Returns the changes that were made to the given entity since this state
+	 * was copied from its parent.
+	 * 
+	 * @param entityID
+	 * @return
+	 */
+	public Set<StateChange> getChanges(VariableID entityID) {
+		if (changedEntities == null) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(changedEntities.get(entityID));
+	}
+
+	/**
+	 * Returns the IDs of all entities that were added, removed or modified
+	 * since this state was copied from its parent.
+	 * 
+	 * @return
+	 */
+	public Set<VariableID> getChangedEntityIDs() {
+		if (changedEntities == null) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(changedEntities.keySet());
+	}
+
+	void checkNotFrozen() {
+		if (frozen) {
+			throw new IllegalStateException(String.format(
+					"State %s is shared with copy-on-write copies and must not be modified. Modify a copy of this state instead.",
+					getID()));
+		}
+	}
+
 	public boolean tokenHasAnnotation(Token token) {
-		Set<VariableID> entitiesForToken = tokenToEntities.get(token.getIndex());
-		return entitiesForToken != null && !entitiesForToken.isEmpty();
+		return tokenHasAnnotation(token.getIndex());
 	}
 
+	/**
+	 * Checks whether at least one entity covers the given token. This lookup
+	 * does not allocate any objects and can thus be used freely in explorers
+	 * and templates.
+	 * 
+	 * @param tokenIndex
+	 * @return
+	 */
 	public boolean tokenHasAnnotation(int tokenIndex) {
-		if (tokenIndex >= document.getTokens().size()) {
+		if (document != null && tokenIndex >= document.getTokens().size()) {
 			log.error("Token index %s exceeds bounds of document of length %s", tokenIndex,
 					document.getTokens().size());
 		}
-		Set<VariableID> entitiesForToken = tokenToEntities.get(tokenIndex);
-		return entitiesForToken != null && !entitiesForToken.isEmpty();
+		return tokenToEntities.getEntityCount(tokenIndex) > 0;
+	}
+
+	/**
+	 * Returns the number of entities that cover the given token.
+	 * 
+	 * @param tokenIndex
+	 * @return
+	 */
+	public int getNumberOfAnnotationsForToken(int tokenIndex) {
+		return tokenToEntities.getEntityCount(tokenIndex);
 	}
 
 	public Set<VariableID> getAnnotationsForToken(Token token) {
 		return getAnnotationsForToken(token.getIndex());
 	}
 
+	/**
+	 * Returns the IDs of all entities that cover the given token as a
+	 * read-only view of the token index. The entities are not copied. The
+	 * view must not be used after this state has been modified; copy it if a
+	 * snapshot is needed.
+	 * 
+	 * @param tokenIndex
+	 * @return
+	 */
 	public Set<VariableID> getAnnotationsForToken(int tokenIndex) {
-		Set<VariableID> entitiesForToken = tokenToEntities.get(tokenIndex);
-		if (entitiesForToken == null) {
-			entitiesForToken = new HashSet<VariableID>();
-			tokenToEntities.put(tokenIndex, entitiesForToken);
+		if (tokenToEntities.getEntityCount(tokenIndex) == 0) {
+			return Collections.emptySet();
 		}
-		return entitiesForToken;
+		return tokenToEntities.getEntityIDs(tokenIndex);
 	}
 
 	protected void removeFromTokenToEntityMapping(EntityAnnotation entityAnnotation) {
-		for (int i = entityAnnotation.getBeginTokenIndex(); i < entityAnnotation.getEndTokenIndex(); i++) {
-			Set<VariableID> entitiesForToken = tokenToEntities.get(i);
-			if (entitiesForToken != null) {
-				entitiesForToken.remove(entityAnnotation.getID());
-			}
-		}
+		ensureOwnTokenToEntityMapping();
+		tokenToEntities.remove(entityAnnotation.getID());
 	}
 
 	protected void addToTokenToEntityMapping(EntityAnnotation entityAnnotation) {
-		for (int i = entityAnnotation.getBeginTokenIndex(); i < entityAnnotation.getEndTokenIndex(); i++) {
-			Set<VariableID> entitiesForToken = tokenToEntities.get(i);
-			if (entitiesForToken == null) {
-				entitiesForToken = new HashSet<VariableID>();
-				tokenToEntities.put(i, entitiesForToken);
-			}
-			entitiesForToken.add(entityAnnotation.getID());
-		}
+		ensureOwnTokenToEntityMapping();
+		tokenToEntities.add(entityAnnotation.getID(), entityAnnotation.getBeginTokenIndex(),
+				entityAnnotation.getEndTokenIndex());
 	}
 
 	/**
-	 * This function iterates over all entities and all of their arguments to
-	 * remove all reference to the given entity.
+	 * This function looks up all entities that reference the given entity in
+	 * the reverse argument index and removes these references.
 	 * 
 	 * @param removedEntity
 	 */
 	private void removeReferencingArguments(EntityAnnotation removedEntity) {
+		VariableID removedID = removedEntity.getID();
+		Set<ArgumentReference> references = argumentReferences.get(removedID);
+		if (references.isEmpty()) {
+			return;
+		}
+		for (ArgumentReference reference : new ArrayList<>(references)) {
+			EntityAnnotation e = getMutableEntity(reference.parentID);
+			if (e != null) {
+				e.removeArgument(reference.role, removedID);
+			} else {
+				removeArgumentReference(reference.parentID, reference.role, removedID);
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the given entity object is the one that is stored in this
+	 * state. Entities that are not (yet) part of this state do not contribute
+	 * to the reverse argument index.
+	 * 
+	 * @param entity
+	 * @return
+	 */
+	boolean containsEntity(EntityAnnotation entity) {
+		return entities.get(entity.getID()) == entity;
+	}
+
+	void addArgumentReference(VariableID parentID, ArgumentRole role, VariableID targetID) {
+		ensureOwnArgumentReferences();
+		argumentReferences.put(targetID, new ArgumentReference(parentID, role));
+	}
+
+	void removeArgumentReference(VariableID parentID, ArgumentRole role, VariableID targetID) {
+		ensureOwnArgumentReferences();
+		argumentReferences.remove(targetID, new ArgumentReference(parentID, role));
+	}
+
+	/**
+	 * Returns the structural hash of this state. Two states with the same
+	 * annotations (types, spans and arguments, regardless of the IDs of the
+	 * entities) have the same structural hash. The hash is maintained
+	 * incrementally and can be read in constant time.
+	 * 
+	 * @return
+	 */
+	public long getStructuralHash() {
+		return structuralHash;
+	}
+
+	/**
+	 * Checks whether the given state contains exactly the same annotations as
+	 * this state, regardless of the IDs of the entities. Entities are compared
+	 * by type and span, arguments by role and the type and span of the
+	 * referenced entity. This check agrees with getStructuralHash(): states
+	 * with the same annotations always have the same hash.
+	 * 
+	 * @param other
+	 * @return
+	 */
+	public boolean hasSameAnnotations(State other) {
+		if (this == other) {
+			return true;
+		}
+		if (structuralHash != other.structuralHash || entities.size() != other.entities.size()) {
+			return false;
+		}
+		return annotationSignatures().equals(other.annotationSignatures());
+	}
+
+	private Multiset<List<Object>> annotationSignatures() {
+		Multiset<List<Object>> signatures = HashMultiset.create();
 		for (EntityAnnotation e : entities.values()) {
-			Multimap<ArgumentRole, VariableID> arguments = e.getReadOnlyArguments();
-			for (Entry<ArgumentRole, VariableID> entry : arguments.entries()) {
-				if (entry.getValue().equals(removedEntity.getID())) {
-					e.removeArgument(entry.getKey(), entry.getValue());
+			Multiset<List<Object>> arguments = HashMultiset.create();
+			for (int i = 0; i < e.getNumberOfArguments(); i++) {
+				EntityAnnotation argument = entities.get(e.getArgumentID(i));
+				if (argument != null) {
+					arguments.add(Arrays.asList(e.getArgumentRole(i), argument.getType(),
+							argument.getBeginTokenIndex(), argument.getEndTokenIndex()));
 				}
 			}
+			signatures.add(Arrays.asList(e.getType(), e.getBeginTokenIndex(), e.getEndTokenIndex(), arguments));
+		}
+		return signatures;
+	}
+
+	/**
+	 * Computes the part of the structural hash that depends on the given
+	 * entity. That is, the hash of the entity itself and of all argument edges
+	 * from or to this entity. Edges are only counted if both entities are part
+	 * of this state.
+	 * 
+	 * @param entity
+	 * @return
+	 */
+	private long structuralHashOf(EntityAnnotation entity) {
+		long entityHash = StructuralHash.entity(entity);
+		long hash = entityHash;
+		for (int i = 0; i < entity.getNumberOfArguments(); i++) {
+			EntityAnnotation argument = entities.get(entity.getArgumentID(i));
+			if (argument != null) {
+				long argumentHash = argument == entity ? entityHash : StructuralHash.entity(argument);
+				hash += StructuralHash.argument(entityHash, entity.getArgumentRole(i), argumentHash);
+			}
+		}
+		for (ArgumentReference reference : argumentReferences.get(entity.getID())) {
+			if (reference.parentID.equals(entity.getID())) {
+				// self references are already counted above
+				continue;
+			}
+			EntityAnnotation parent = entities.get(reference.parentID);
+			if (parent != null) {
+				hash += StructuralHash.argument(StructuralHash.entity(parent), reference.role, entityHash);
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Needs to be called by an entity of this state right before its type or
+	 * span changes.
+	 * 
+	 * @param entity
+	 */
+	void beforeEntityChange(EntityAnnotation entity) {
+		if (containsEntity(entity)) {
+			structuralHash -= structuralHashOf(entity);
+			countEntityType(entity, -1);
+		}
+	}
+
+	/**
+	 * Needs to be called by an entity of this state right after its type or
+	 * span changed.
+	 * 
+	 * @param entity
+	 */
+	void afterEntityChange(EntityAnnotation entity) {
+		if (containsEntity(entity)) {
+			structuralHash += structuralHashOf(entity);
+			countEntityType(entity, 1);
+		}
+	}
+
+	/**
+	 * Adds (or removes) the given entity to the histogram of entity types.
+	 * 
+	 * @param entity
+	 * @param delta
+	 */
+	private void countEntityType(EntityAnnotation entity, int delta) {
+		if (sharedEntityTypeCounts) {
+			entityTypeCounts = HashMultiset.create(entityTypeCounts);
+			sharedEntityTypeCounts = false;
+		}
+		String typeName = entity.getType() != null ? entity.getType().getName() : null;
+		if (delta > 0) {
+			entityTypeCounts.add(typeName, delta);
+		} else {
+			entityTypeCounts.remove(typeName, -delta);
+		}
+	}
+
+	/**
+	 * Returns the number of entities per entity type name in this state. The
+	 * histogram is maintained incrementally and can be read in constant time.
+	 * 
+	 * @return
+	 */
+	public Multiset<String> getEntityTypeCounts() {
+		return Multisets.unmodifiableMultiset(entityTypeCounts);
+	}
+
+	/**
+	 * Adds (or removes) the hash of the given argument edge to the structural
+	 * hash, if both entities are part of this state.
+	 * 
+	 * @param parent
+	 * @param role
+	 * @param argumentID
+	 * @param added
+	 */
+	void updateArgumentHash(EntityAnnotation parent, ArgumentRole role, VariableID argumentID, boolean added) {
+		EntityAnnotation argument = entities.get(argumentID);
+		if (argument == null || !containsEntity(parent)) {
+			return;
+		}
+		long parentHash = StructuralHash.entity(parent);
+		long argumentHash = argument == parent ? parentHash : StructuralHash.entity(argument);
+		long edgeHash = StructuralHash.argument(parentHash, role, argumentHash);
+		structuralHash += added ? edgeHash : -edgeHash;
+	}
+
+	private void addArgumentReferences(EntityAnnotation entity) {
+		for (int i = 0; i < entity.getNumberOfArguments(); i++) {
+			addArgumentReference(entity.getID(), entity.getArgumentRole(i), entity.getArgumentID(i));
+		}
+	}
+
+	private void removeArgumentReferences(EntityAnnotation entity) {
+		for (int i = 0; i < entity.getNumberOfArguments(); i++) {
+			removeArgumentReference(entity.getID(), entity.getArgumentRole(i), entity.getArgumentID(i));
 		}
 	}
 
@@ -206,8 +783,20 @@ public class State extends AbstractState implements Serializable {
 		return new VariableID(id);
 	}
 
+	/**
+	 * Creates a map from each annotated token to the entities that cover it.
+	 * The map is built on each call and is meant for debugging output only.
+	 * 
+	 * @return
+	 */
 	public Map<Integer, Set<VariableID>> getTokenToEntityMapping() {
-		return tokenToEntities;
+		Map<Integer, Set<VariableID>> mapping = new TreeMap<>();
+		for (int i = 0; i < tokenToEntities.getNumberOfTokens(); i++) {
+			if (tokenToEntities.getEntityCount(i) > 0) {
+				mapping.put(i, new HashSet<>(getAnnotationsForToken(i)));
+			}
+		}
+		return mapping;
 	}
 
 	/**
@@ -244,11 +833,12 @@ public class State extends AbstractState implements Serializable {
 		builder.append(scoreFormat.format(objectiveScore));
 		builder.append("]: ");
 		for (Token t : document.getTokens()) {
-			Set<VariableID> entities = getAnnotationsForToken(t);
+			int tokenIndex = t.getIndex();
 			List<EntityAnnotation> begin = new ArrayList<>();
 			List<EntityAnnotation> end = new ArrayList<>();
-			for (VariableID entityID : entities) {
-				EntityAnnotation e = getEntity(entityID);
+			for (int slot = tokenToEntities.nextSlot(tokenIndex, 0); slot >= 0; slot = tokenToEntities
+					.nextSlot(tokenIndex, slot + 1)) {
+				EntityAnnotation e = getEntity(tokenToEntities.getEntityID(slot));
 				if (e.getBeginTokenIndex() == t.getIndex())
 					begin.add(e);
 				if (e.getEndTokenIndex() == t.getIndex() + 1)
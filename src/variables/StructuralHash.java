@@ -0,0 +1,54 @@
+package variables;
+
+import java.util.Objects;
+
+/**
+ * Hash functions for the structural hash of a State. The hash of a state is
+ * the sum of the hashes of its entities and of its argument edges. Entities
+ * are hashed by their type and span, argument edges by the role and the hashes
+ * of both connected entities. The IDs of the entities are ignored. Since the
+ * hash is a sum, it can be updated in constant time whenever a single entity
+ * or argument changes, similar to Zobrist hashing.
+ */
+class StructuralHash {
+
+	private static final long ENTITY_SEED = 0x9E3779B97F4A7C15L;
+	private static final long ARGUMENT_SEED = 0xC2B2AE3D27D4EB4FL;
+
+	private StructuralHash() {
+	}
+
+	public static long entity(EntityType type, int beginTokenIndex, int endTokenIndex) {
+		long h = ENTITY_SEED;
+		h = mix(h ^ Objects.hashCode(type));
+		h = mix(h ^ beginTokenIndex);
+		h = mix(h ^ endTokenIndex);
+		return h;
+	}
+
+	public static long entity(EntityAnnotation entity) {
+		return entity(entity.getType(), entity.getBeginTokenIndex(), entity.getEndTokenIndex());
+	}
+
+	public static long argument(long parentHash, ArgumentRole role, long argumentHash) {
+		long h = ARGUMENT_SEED;
+		h = mix(h ^ parentHash);
+		h = mix(h ^ Objects.hashCode(role));
+		h = mix(h ^ argumentHash);
+		return h;
+	}
+
+	/**
+	 * Finalization step of the SplitMix64 generator. It spreads each input bit
+	 * to all output bits, so that the sum of several hashes is unlikely to
+	 * collide.
+	 * 
+	 * @param z
+	 * @return
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,310 @@
+package variables;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import utility.VariableID;
+
+/**
+ * Maps each token of a document to the entities that cover this token. Every
+ * entity that is added to this index is assigned a dense slot number. For each
+ * token, the covering entities are stored as a bit set over these slots. In
+ * addition, the number of covering entities is stored for each token, so that
+ * the most common query (does this token have any annotation?) is answered
+ * without touching the bit sets at all.
+ *
+ * All arrays are laid out token by token, so that copying the whole index (as
+ * needed for copy-on-write copies of a state) is a plain array copy.
+ */
+class TokenEntityIndex implements Serializable {
+
+	private static final int BITS_PER_WORD = 64;
+
+	private int numberOfTokens;
+	/**
+	 * Number of long values that are used per token for the slot bit set.
+	 */
+	private int wordsPerToken;
+	/**
+	 * Bit set over entity slots. The bits for token i are stored in
+	 * [i*wordsPerToken, (i+1)*wordsPerToken).
+	 */
+	private long[] slotBits;
+	/**
+	 * Number of entities that cover token i.
+	 */
+	private int[] entityCounts;
+	/**
+	 * Maps each slot to the entity that currently occupies it. Free slots are
+	 * null.
+	 */
+	private VariableID[] slotToEntity;
+	/**
+	 * Reverse mapping of slotToEntity.
+	 */
+	private Map<VariableID, Integer> entityToSlot;
+	/**
+	 * Stack of the free slots. The lowest free slot is on top, so that the
+	 * bit sets stay as dense as possible.
+	 */
+	private int[] freeSlots;
+	private int numberOfFreeSlots;
+
+	public TokenEntityIndex(int numberOfTokens) {
+		this.numberOfTokens = numberOfTokens;
+		this.wordsPerToken = 1;
+		this.slotBits = new long[numberOfTokens * wordsPerToken];
+		this.entityCounts = new int[numberOfTokens];
+		this.slotToEntity = new VariableID[BITS_PER_WORD];
+		this.entityToSlot = new HashMap<>();
+		this.freeSlots = new int[BITS_PER_WORD];
+		pushFreeSlots(0, BITS_PER_WORD);
+	}
+
+	public TokenEntityIndex(TokenEntityIndex index) {
+		this.numberOfTokens = index.numberOfTokens;
+		this.wordsPerToken = index.wordsPerToken;
+		this.slotBits = index.slotBits.clone();
+		this.entityCounts = index.entityCounts.clone();
+		this.slotToEntity = index.slotToEntity.clone();
+		this.entityToSlot = new HashMap<>(index.entityToSlot);
+		this.freeSlots = index.freeSlots.clone();
+		this.numberOfFreeSlots = index.numberOfFreeSlots;
+	}
+
+	public int getNumberOfTokens() {
+		return numberOfTokens;
+	}
+
+	/**
+	 * Marks the tokens in [from, to) as covered by the given entity.
+	 *
+	 * @param entityID
+	 * @param from
+	 * @param to
+	 */
+	public void add(VariableID entityID, int from, int to) {
+		int slot = slotOf(entityID);
+		if (slot < 0) {
+			slot = allocateSlot(entityID);
+		}
+		ensureTokenCapacity(to);
+		int word = slot / BITS_PER_WORD;
+		long mask = 1L << (slot % BITS_PER_WORD);
+		for (int i = Math.max(0, from); i < to; i++) {
+			int position = i * wordsPerToken + word;
+			if ((slotBits[position] & mask) == 0) {
+				slotBits[position] |= mask;
+				entityCounts[i]++;
+			}
+		}
+	}
+
+	/**
+	 * Removes the given entity from all tokens and releases its slot. All bits
+	 * of the slot are cleared, so that the slot does not carry any tokens over
+	 * to the entity that is assigned to it next.
+	 *
+	 * @param entityID
+	 */
+	public void remove(VariableID entityID) {
+		int slot = slotOf(entityID);
+		if (slot < 0) {
+			return;
+		}
+		int word = slot / BITS_PER_WORD;
+		long mask = 1L << (slot % BITS_PER_WORD);
+		for (int i = 0; i < numberOfTokens; i++) {
+			int position = i * wordsPerToken + word;
+			if ((slotBits[position] & mask) != 0) {
+				slotBits[position] &= ~mask;
+				entityCounts[i]--;
+			}
+		}
+		slotToEntity[slot] = null;
+		entityToSlot.remove(entityID);
+		freeSlots[numberOfFreeSlots++] = slot;
+	}
+
+	/**
+	 * Returns the number of entities that cover the given token. This method
+	 * does not allocate any objects.
+	 *
+	 * @param tokenIndex
+	 * @return
+	 */
+	public int getEntityCount(int tokenIndex) {
+		if (tokenIndex < 0 || tokenIndex >= numberOfTokens) {
+			return 0;
+		}
+		return entityCounts[tokenIndex];
+	}
+
+	/**
+	 * Returns the first slot >= fromSlot of an entity that covers the given
+	 * token, or -1 if there is no such slot. Together with getEntityID() this
+	 * allows to iterate over the entities of a token without any allocation:
+	 *
+	 * <pre>
+	 * for (int s = index.nextSlot(t, 0); s >= 0; s = index.nextSlot(t, s + 1)) {
+	 * 	VariableID entityID = index.getEntityID(s);
+	 * }
+	 * </pre>
+	 *
+	 * @param tokenIndex
+	 * @param fromSlot
+	 * @return
+	 */
+	public int nextSlot(int tokenIndex, int fromSlot) {
+		if (tokenIndex < 0 || tokenIndex >= numberOfTokens || entityCounts[tokenIndex] == 0) {
+			return -1;
+		}
+		int word = fromSlot / BITS_PER_WORD;
+		if (word >= wordsPerToken) {
+			return -1;
+		}
+		int offset = tokenIndex * wordsPerToken;
+		long bits = slotBits[offset + word] & (-1L << (fromSlot % BITS_PER_WORD));
+		while (true) {
+			if (bits != 0) {
+				return word * BITS_PER_WORD + Long.numberOfTrailingZeros(bits);
+			}
+			word++;
+			if (word >= wordsPerToken) {
+				return -1;
+			}
+			bits = slotBits[offset + word];
+		}
+	}
+
+	public VariableID getEntityID(int slot) {
+		return slotToEntity[slot];
+	}
+
+	/**
+	 * Returns a read-only view of the IDs of the entities that cover the given
+	 * token. The view reads the bit set of the token directly and does not
+	 * copy it. It reflects later changes of this index.
+	 *
+	 * @param tokenIndex
+	 * @return
+	 */
+	public Set<VariableID> getEntityIDs(int tokenIndex) {
+		return new TokenEntities(tokenIndex);
+	}
+
+	private int slotOf(VariableID entityID) {
+		Integer slot = entityToSlot.get(entityID);
+		return slot != null ? slot : -1;
+	}
+
+	private int allocateSlot(VariableID entityID) {
+		if (numberOfFreeSlots == 0) {
+			growSlots();
+		}
+		int slot = freeSlots[--numberOfFreeSlots];
+		slotToEntity[slot] = entityID;
+		entityToSlot.put(entityID, slot);
+		return slot;
+	}
+
+	/**
+	 * Pushes the slots in [from, to) onto the stack of free slots, the lowest
+	 * slot last.
+	 *
+	 * @param from
+	 * @param to
+	 */
+	private void pushFreeSlots(int from, int to) {
+		for (int slot = to - 1; slot >= from; slot--) {
+			freeSlots[numberOfFreeSlots++] = slot;
+		}
+	}
+
+	/**
+	 * Adds another word of slots for each token.
+	 */
+	private void growSlots() {
+		int newWordsPerToken = wordsPerToken + 1;
+		long[] newSlotBits = new long[numberOfTokens * newWordsPerToken];
+		for (int i = 0; i < numberOfTokens; i++) {
+			System.arraycopy(slotBits, i * wordsPerToken, newSlotBits, i * newWordsPerToken, wordsPerToken);
+		}
+		slotBits = newSlotBits;
+		wordsPerToken = newWordsPerToken;
+		slotToEntity = Arrays.copyOf(slotToEntity, newWordsPerToken * BITS_PER_WORD);
+		freeSlots = Arrays.copyOf(freeSlots, slotToEntity.length);
+		pushFreeSlots(wordsPerToken * BITS_PER_WORD - BITS_PER_WORD, wordsPerToken * BITS_PER_WORD);
+	}
+
+	/**
+	 * Entities are not supposed to exceed the document, but states without a
+	 * document (or with inconsistent annotations) are still indexed correctly.
+	 *
+	 * @param to
+	 */
+	private void ensureTokenCapacity(int to) {
+		if (to > numberOfTokens) {
+			slotBits = Arrays.copyOf(slotBits, to * wordsPerToken);
+			entityCounts = Arrays.copyOf(entityCounts, to);
+			numberOfTokens = to;
+		}
+	}
+
+	/**
+	 * Read-only set view over the slot bits of a single token.
+	 */
+	private class TokenEntities extends AbstractSet<VariableID> {
+		private int tokenIndex;
+
+		public TokenEntities(int tokenIndex) {
+			this.tokenIndex = tokenIndex;
+		}
+
+		@Override
+		public int size() {
+			return getEntityCount(tokenIndex);
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if (!(o instanceof VariableID) || tokenIndex < 0 || tokenIndex >= numberOfTokens) {
+				return false;
+			}
+			int slot = slotOf((VariableID) o);
+			if (slot < 0) {
+				return false;
+			}
+			long bits = slotBits[tokenIndex * wordsPerToken + slot / BITS_PER_WORD];
+			return (bits & (1L << (slot % BITS_PER_WORD))) != 0;
+		}
+
+		@Override
+		public Iterator<VariableID> iterator() {
+			return new Iterator<VariableID>() {
+				private int slot = nextSlot(tokenIndex, 0);
+
+				@Override
+				public boolean hasNext() {
+					return slot >= 0;
+				}
+
+				@Override
+				public VariableID next() {
+					if (slot < 0) {
+						throw new NoSuchElementException();
+					}
+					VariableID entityID = slotToEntity[slot];
+					slot = nextSlot(tokenIndex, slot + 1);
+					return entityID;
+				}
+			};
+		}
+	}
+}